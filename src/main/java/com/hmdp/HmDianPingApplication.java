@@ -4,9 +4,15 @@ import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 @EnableAspectJAutoProxy(exposeProxy = true) // 设置暴露动态代理对象，不暴露代码中自己想要获取是获取不到的
 @MapperScan("com.hmdp.mapper")
+@EnableScheduling // 开启定时任务，缓存发件箱的兜底处理
+// 事务切面的优先级比RedisCacheAspect高一级，@RedisCacheEvict写发件箱时处在事务之内
+@EnableTransactionManagement(order = Ordered.LOWEST_PRECEDENCE - 1)
 @SpringBootApplication
 public class HmDianPingApplication {
 
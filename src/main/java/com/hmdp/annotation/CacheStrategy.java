@@ -0,0 +1,19 @@
+package com.hmdp.annotation;
+
+/**
+ * 缓存查询策略，对应CacheClient中的几种查询方式
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值，解决缓存穿透
+     */
+    PASS_THROUGH,
+    /**
+     * 互斥锁重建，解决缓存击穿
+     */
+    MUTEX,
+    /**
+     * 逻辑过期，解决缓存击穿，过期后返回旧数据并异步重建
+     */
+    LOGICAL_EXPIRE
+}
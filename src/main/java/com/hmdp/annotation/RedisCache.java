@@ -0,0 +1,39 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询缓存，由RedisCacheAspect调用CacheClient实现，方法本身就是查数据库的逻辑（dbFallback）
+ * 缓存的类型就是方法的返回值类型，所以方法要直接返回实体/DTO，不能返回Result
+ * 注意：要加在实现类的方法上，并且通过代理对象调用才会生效
+ * <pre>
+ * &#064;RedisCache(prefix = CACHE_HOT_KEY, key = "#id", strategy = CacheStrategy.LOGICAL_EXPIRE, ttl = CACHE_SHOP_TTL)
+ * public Shop queryShopById(Long id)
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RedisCache {
+
+    /**
+     * key前缀，例如 cache:shop:
+     */
+    String prefix();
+
+    /**
+     * key后缀，SpEL表达式，可以引用方法参数，例如 #id、#shop.id
+     */
+    String key();
+
+    CacheStrategy strategy() default CacheStrategy.PASS_THROUGH;
+
+    long ttl();
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+}
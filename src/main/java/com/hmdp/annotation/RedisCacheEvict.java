@@ -0,0 +1,27 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法执行成功后删除缓存，删除通过缓存发件箱完成
+ * 加在@Transactional方法上时，发件箱记录和业务数据在同一个事务中提交
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RedisCacheEvict {
+
+    /**
+     * 要删除的key前缀，同一份数据可能缓存在多个前缀下，例如 cache:shop: 和 cache:hot:
+     */
+    String[] prefixes();
+
+    /**
+     * key后缀，SpEL表达式，计算结果为null时不删除
+     */
+    String key();
+}
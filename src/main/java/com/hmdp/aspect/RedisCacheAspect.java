@@ -0,0 +1,95 @@
+package com.hmdp.aspect;
+
+import com.hmdp.annotation.RedisCache;
+import com.hmdp.annotation.RedisCacheEvict;
+import com.hmdp.service.ICacheOutboxService;
+import com.hmdp.utils.CacheClient;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 处理@RedisCache和@RedisCacheEvict
+ * 优先级最低，保证在事务切面（见HmDianPingApplication上的@EnableTransactionManagement）里面执行
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class RedisCacheAspect {
+
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+    // 解析后的SpEL表达式缓存起来，避免每次调用都重新解析
+    private static final Map<String, Expression> EXPRESSION_CACHE = new ConcurrentHashMap<>();
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Around("@annotation(redisCache)")
+    public Object cache(ProceedingJoinPoint pjp, RedisCache redisCache) throws Throwable {
+        Object id = parseKey(redisCache.key(), pjp);
+        if (id == null) {
+            return pjp.proceed();
+        }
+        @SuppressWarnings("unchecked")
+        Class<Object> type = ((MethodSignature) pjp.getSignature()).getReturnType();
+        // 原方法就是查数据库的回调函数；逻辑过期会在重建线程中调用，proceed()每次都是基于副本执行，可以重复调用
+        Function<Object, Object> dbFallback = k -> {
+            try {
+                return pjp.proceed();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        };
+        switch (redisCache.strategy()) {
+            case MUTEX:
+                return cacheClient.queryWithMutex(redisCache.prefix(), id, type, dbFallback, redisCache.ttl(), redisCache.unit());
+            case LOGICAL_EXPIRE:
+                return cacheClient.queryWithLogicalExpire(redisCache.prefix(), id, type, dbFallback, redisCache.ttl(), redisCache.unit());
+            default:
+                return cacheClient.queryWithPassThrough(redisCache.prefix(), id, type, dbFallback, redisCache.ttl(), redisCache.unit());
+        }
+    }
+
+    @Around("@annotation(redisCacheEvict)")
+    public Object evict(ProceedingJoinPoint pjp, RedisCacheEvict redisCacheEvict) throws Throwable {
+        Object result = pjp.proceed();
+        Object id = parseKey(redisCacheEvict.key(), pjp);
+        if (id != null) {
+            String[] prefixes = redisCacheEvict.prefixes();
+            String[] keys = new String[prefixes.length];
+            for (int i = 0; i < prefixes.length; i++) {
+                keys[i] = prefixes[i] + id;
+            }
+            cacheOutboxService.saveInvalidation(keys);
+        }
+        return result;
+    }
+
+    private Object parseKey(String spel, ProceedingJoinPoint pjp) {
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(
+                pjp.getTarget(), method, pjp.getArgs(), NAME_DISCOVERER);
+        return EXPRESSION_CACHE.computeIfAbsent(spel, PARSER::parseExpression).getValue(context);
+    }
+}
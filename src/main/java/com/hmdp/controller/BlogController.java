@@ -69,12 +69,7 @@ public class BlogController {
     public Result queryBlogByUserId(
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam("id") Long id) {
-        // 根据用户查询
-        Page<Blog> page = blogService.query()
-                .eq("user_id", id).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        return Result.ok(records);
+        return blogService.queryBlogOfUser(id, current);
     }
 
     @GetMapping("/hot")
@@ -96,4 +91,9 @@ public class BlogController {
     public Result queryBlogOfFollow(@RequestParam("lastId") Long max, @RequestParam(value = "offset", defaultValue = "0") Integer offset) {
         return blogService.queryBlogOfFollow(max, offset);
     }
+
+    @GetMapping("/fanout/{id}")
+    public Result queryFanoutProgress(@PathVariable("id") Long id) {
+        return blogService.queryFanoutProgress(id);
+    }
 }
@@ -1,12 +1,10 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -44,9 +42,7 @@ public class ShopController {
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -60,6 +56,20 @@ public class ShopController {
         return  shopService.update(shop);
     }
 
+    /**
+     * 店铺名称自动补全
+     * @param prefix 已输入的内容
+     * @param limit 建议条数，最多10条
+     * @return 店铺id和名称
+     */
+    @GetMapping("/suggest")
+    public Result suggest(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit
+    ) {
+        return shopService.suggest(prefix, limit);
+    }
+
     /**
      * 根据商铺类型分页查询商铺信息
      * 改造2.0：增加根据地理位置坐标来查询附近商铺功能
@@ -73,8 +83,18 @@ public class ShopController {
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             /*required = false 当请求参数没有经纬度坐标，则还是从数据库中查询商铺*/
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
+            @RequestParam(value = "y", required = false) Double y,
+            /*带了cursor参数（第一页传空串）则按游标分页，返回 {list, cursor}*/
+            @RequestParam(value = "cursor", required = false) String cursor,
+            /*筛选、排序条件：minPrice、maxPrice、minScore、openNow、sortBy，有任意一个则在服务端筛选*/
+            ShopFilter filter
     ) {
+        if (!filter.isEmpty()) {
+            return shopService.queryShopByFilter(typeId, current, x, y, filter);
+        }
+        if (cursor != null && x != null && y != null) {
+            return shopService.scrollShopByType(typeId, x, y, cursor);
+        }
         return shopService.queryShopByType(typeId, current, x, y);
     }
 
@@ -89,11 +109,7 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        // 查询内存中的倒排索引，结果从缓存中读取
+        return shopService.queryShopByName(name, current);
     }
 }
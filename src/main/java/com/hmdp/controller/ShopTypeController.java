@@ -2,11 +2,13 @@ package com.hmdp.controller;
 
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeCatalog;
 import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
 import java.util.List;
@@ -25,11 +27,19 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 店铺类型列表，支持ETag协商缓存：客户端带上 If-None-Match，类型没有变化时直接返回304，不再传输列表
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
+    public Result queryTypeList(WebRequest request) {
         /*List<ShopType> typeList = typeService
                 .query().orderByAsc("sort").list();
         return Result.ok(typeList);*/
-        return typeService.queryTypeList();
+        ShopTypeCatalog catalog = typeService.getCatalog();
+        if (request.checkNotModified(catalog.getEtag())) {
+            // 已经设置了304和ETag响应头
+            return null;
+        }
+        return typeService.queryTypeList(catalog);
     }
 }
@@ -0,0 +1,39 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 附近店铺查询的筛选、排序条件，全部为空时按原来的方式查询
+ */
+@Data
+public class ShopFilter {
+    public static final String SORT_DISTANCE = "distance";
+    public static final String SORT_SCORE = "score";
+    public static final String SORT_SOLD = "sold";
+
+    /**
+     * 最低人均价格
+     */
+    private Long minPrice;
+    /**
+     * 最高人均价格
+     */
+    private Long maxPrice;
+    /**
+     * 最低评分，与Shop.score相同，乘10后的值
+     */
+    private Integer minScore;
+    /**
+     * 只看营业中的店铺
+     */
+    private Boolean openNow;
+    /**
+     * 排序：distance（默认，没有坐标时为score）、score、sold
+     */
+    private String sortBy;
+
+    public boolean isEmpty() {
+        return minPrice == null && maxPrice == null && minScore == null
+                && !Boolean.TRUE.equals(openNow) && sortBy == null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 搜索框自动补全的一条建议
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopSuggestion {
+    private Long id;
+    private String name;
+}
@@ -0,0 +1,24 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 店铺类型目录的不可变快照
+ * version为店铺类型命名空间的版本号，类型有变化时升级版本号、各节点重新加载；etag由版本号和内容生成，用于HTTP协商缓存
+ */
+@Getter
+public class ShopTypeCatalog {
+    private final long version;
+    private final List<ShopType> types;
+    private final String etag;
+
+    public ShopTypeCatalog(long version, List<ShopType> types) {
+        this.version = version;
+        this.types = Collections.unmodifiableList(types);
+        this.etag = "\"" + version + "-" + Integer.toHexString(types.hashCode()) + "\"";
+    }
+}
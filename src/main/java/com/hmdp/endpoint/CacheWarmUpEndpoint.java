@@ -0,0 +1,29 @@
+package com.hmdp.endpoint;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheWarmer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 手动触发缓存预热（例如Redis被清空后），挂在管理端口上
+ * POST /actuator/cacheWarmUp
+ */
+@Component
+@Endpoint(id = "cacheWarmUp")
+public class CacheWarmUpEndpoint {
+
+    @Resource
+    private CacheWarmer cacheWarmer;
+
+    /**
+     * @return 预热的店铺数量，-1代表已有预热任务在执行
+     */
+    @WriteOperation
+    public Result warmUp() {
+        return Result.ok(cacheWarmer.warmUp());
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmdp.endpoint;
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IShopService;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 店铺管理操作，挂在管理端口上（只监听本机，见 management.server），不放在免登录的 /shop 下
+ * DELETE /actuator/shop/{id}
+ */
+@Component
+@Endpoint(id = "shop")
+public class ShopEndpoint {
+
+    @Resource
+    private IShopService shopService;
+
+    /**
+     * 删除商铺
+     * @param id 商铺id
+     * @return 无
+     */
+    @DeleteOperation
+    public Result deleteShop(@Selector Long id) {
+        return shopService.deleteShop(id);
+    }
+}
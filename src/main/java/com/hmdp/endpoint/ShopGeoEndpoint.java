@@ -0,0 +1,29 @@
+package com.hmdp.endpoint;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.ShopGeoRedisIndex;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 全量重建Redis中的店铺地理位置（例如Redis数据丢失后），挂在管理端口上
+ * POST /actuator/shopGeo
+ */
+@Component
+@Endpoint(id = "shopGeo")
+public class ShopGeoEndpoint {
+
+    @Resource
+    private ShopGeoRedisIndex shopGeoRedisIndex;
+
+    /**
+     * @return 写入的店铺数量，-1代表已有重建任务在执行
+     */
+    @WriteOperation
+    public Result rebuild() {
+        return Result.ok(shopGeoRedisIndex.rebuild());
+    }
+}
@@ -0,0 +1,44 @@
+package com.hmdp.endpoint;
+
+import com.hmdp.dto.Result;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.IShopTypeService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 店铺类型的新增、修改，挂在管理端口上；/shop-type 下只保留免登录的列表查询
+ * POST /actuator/shopType        新增，body为 {"name", "icon", "sort"}
+ * POST /actuator/shopType/{id}   修改，body中没有的字段不修改
+ */
+@Component
+@Endpoint(id = "shopType")
+public class ShopTypeEndpoint {
+
+    @Resource
+    private IShopTypeService typeService;
+
+    /**
+     * 新增店铺类型
+     * @return 店铺类型id
+     */
+    @WriteOperation
+    public Result saveShopType(String name, String icon, Integer sort) {
+        return typeService.saveShopType(new ShopType().setName(name).setIcon(icon).setSort(sort));
+    }
+
+    /**
+     * 更新店铺类型
+     * @param id 店铺类型id
+     * @return 无
+     */
+    @WriteOperation
+    public Result updateShopType(@Selector Long id, @Nullable String name, @Nullable String icon, @Nullable Integer sort) {
+        return typeService.updateShopType(new ShopType().setId(id).setName(name).setIcon(icon).setSort(sort));
+    }
+}
@@ -0,0 +1,68 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 缓存事件发件箱
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_cache_outbox")
+public class CacheOutbox implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 删除缓存，payload为缓存key
+     */
+    public static final String INVALIDATE = "INVALIDATE";
+
+    /**
+     * 升级命名空间版本号，payload为命名空间
+     */
+    public static final String BUMP_NAMESPACE = "BUMP_NAMESPACE";
+
+    /**
+     * 店铺新增/修改/删除，payload为店铺id
+     */
+    public static final String SHOP_CHANGED = "SHOP_CHANGED";
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 事件类型
+     */
+    private String eventType;
+
+    /**
+     * 事件内容
+     */
+    private String payload;
+
+    /**
+     * 处理失败的次数
+     */
+    private Integer retryCount;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+
+}
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.BlogComments;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,16 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogCommentsMapper extends BaseMapper<BlogComments> {
 
+    /**
+     * 查询每条一级评论最早的若干条回复
+     * @param parentIds 一级评论id
+     * @param limit 每条一级评论的回复数
+     */
+    List<BlogComments> selectFirstReplies(@Param("parentIds") List<Long> parentIds, @Param("limit") int limit);
+
+    /**
+     * 批量更新点赞数
+     * @param comments 只需要id和liked
+     */
+    int updateLikedBatch(@Param("comments") List<BlogComments> comments);
 }
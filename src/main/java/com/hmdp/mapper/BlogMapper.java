@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,15 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 批量更新点赞数
+     * @param blogs 只需要id和liked
+     */
+    int updateLikedBatch(@Param("blogs") List<Blog> blogs);
+
+    /**
+     * 按评论表重新统计评论数
+     * @param ids 博客id
+     */
+    int updateCommentsBatch(@Param("ids") List<Long> ids);
 }
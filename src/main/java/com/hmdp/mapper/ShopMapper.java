@@ -3,6 +3,8 @@ package com.hmdp.mapper;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
+import java.time.LocalDateTime;
+
 /**
  * <p>
  *  Mapper 接口
@@ -13,4 +15,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface ShopMapper extends BaseMapper<Shop> {
 
+    /**
+     * 查询数据库的当前时间
+     */
+    LocalDateTime selectNow();
 }
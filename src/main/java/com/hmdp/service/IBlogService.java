@@ -18,6 +18,8 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryHotBlog(Integer current);
 
+    Result queryBlogOfUser(Long userId, Integer current);
+
     Result likeBlog(Long id);
 
     Result queryBlogLikes(Long id);
@@ -26,4 +28,6 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryBlogOfFollow(Long max, Integer offset);
 
+    Result queryFanoutProgress(Long id);
+
 }
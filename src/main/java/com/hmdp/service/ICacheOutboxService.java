@@ -0,0 +1,30 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.CacheOutbox;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface ICacheOutboxService extends IService<CacheOutbox> {
+
+    /**
+     * 记录缓存失效事件，必须在业务数据所在的事务中调用
+     * @param keys 要删除的缓存key
+     */
+    void saveInvalidation(String... keys);
+
+    /**
+     * 记录命名空间版本升级事件，使整个命名空间下的缓存失效
+     * @param namespaces 命名空间
+     */
+    void saveNamespaceBump(String... namespaces);
+
+    /**
+     * 记录店铺变化事件，同步Redis和各节点内存中的店铺地理位置索引
+     * @param shopIds 新增/修改/删除的店铺id
+     */
+    void saveShopChange(Long... shopIds);
+}
@@ -1,6 +1,7 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -16,7 +17,21 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Shop queryShopById(Long id);
+
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 
+    Result deleteShop(Long id);
+
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result scrollShopByType(Integer typeId, Double x, Double y, String cursor);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result suggest(String prefix, Integer limit);
+
+    Result queryShopByFilter(Integer typeId, Integer current, Double x, Double y, ShopFilter filter);
 }
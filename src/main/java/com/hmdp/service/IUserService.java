@@ -3,9 +3,11 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 import javax.servlet.http.HttpSession;
+import java.util.List;
 
 /**
  * <p>
@@ -24,4 +26,8 @@ public interface IUserService extends IService<User> {
     Result sign();
 
     Result signCount();
+
+    UserDTO queryUserById(Long id);
+
+    List<UserDTO> queryUserByIds(List<Long> ids);
 }
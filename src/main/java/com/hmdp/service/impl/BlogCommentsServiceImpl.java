@@ -1,15 +1,53 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.ICacheOutboxService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENT_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENT_LIKE_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_TTL;
 
 /**
  * <p>
  *  服务实现类
  * </p>
+ * 评论分两级：一级评论 parent_id = 0；回复的 parent_id 为所属的一级评论，answer_id 为被回复的评论
+ * 1.分页：按id做游标（keyset），一级评论新的在前、回复按时间顺序，再多的评论翻到后面也只扫一页
+ * 2.缓存：每篇博客的第一页（含每条一级评论最早的几条回复）缓存在 cache:comments:{blogId}，有新评论时通过发件箱失效
+ * 3.计数：评论点赞数、博客评论数先记在Redis，由BlogCommentFlusher异步写回数据库
  *
  * @author 虎哥
  * @since 2021-12-22
@@ -17,4 +55,234 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    // 每条一级评论预先带出的回复数
+    private static final int REPLY_PREVIEW_SIZE = 3;
+    private static final int MAX_CONTENT_LENGTH = 255;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    // 与博客点赞共用同一个脚本
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+    private static final DefaultRedisScript<Long> COMMENT_COUNT_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+        COMMENT_COUNT_SCRIPT = new DefaultRedisScript<>();
+        COMMENT_COUNT_SCRIPT.setLocation(new ClassPathResource("comment_count.lua"));
+        COMMENT_COUNT_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 发表评论或回复
+     * @param comment blogId、content必填；回复时parentId为所属的一级评论，answerId为被回复的评论（不填则为parentId）
+     * @return 评论id
+     */
+    @Override
+    @Transactional
+    public Result saveComment(BlogComments comment) {
+        // 1.校验内容
+        if (StrUtil.isBlank(comment.getContent()) || comment.getContent().length() > MAX_CONTENT_LENGTH) {
+            return Result.fail("评论内容不能为空，且不能超过" + MAX_CONTENT_LENGTH + "个字！");
+        }
+        Long blogId = comment.getBlogId();
+        if (blogId == null || blogService.query().eq("id", blogId).count() == 0) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.校验回复关系
+        Long parentId = comment.getParentId() == null ? 0L : comment.getParentId();
+        Long answerId = 0L;
+        if (parentId != 0) {
+            BlogComments parent = getById(parentId);
+            if (parent == null || !blogId.equals(parent.getBlogId()) || parent.getParentId() != 0) {
+                return Result.fail("回复的评论不存在！");
+            }
+            answerId = comment.getAnswerId() == null ? parentId : comment.getAnswerId();
+            if (!answerId.equals(parentId)) {
+                BlogComments answer = getById(answerId);
+                if (answer == null || !parentId.equals(answer.getParentId())) {
+                    return Result.fail("回复的评论不存在！");
+                }
+            }
+        }
+        // 3.保存
+        BlogComments entity = new BlogComments()
+                .setUserId(UserHolder.getUser().getId())
+                .setBlogId(blogId)
+                .setParentId(parentId)
+                .setAnswerId(answerId)
+                .setContent(comment.getContent())
+                .setLiked(0)
+                .setStatus(false);
+        save(entity);
+        // 4.第一页缓存失效，与评论在同一个事务中记录
+        cacheOutboxService.saveInvalidation(CACHE_COMMENTS_KEY + blogId);
+        // 5.提交后博客评论数+1并标记待写回；提交前执行的话，写回线程可能先统计到不含这条评论的数量
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stringRedisTemplate.execute(COMMENT_COUNT_SCRIPT,
+                        Arrays.asList(BLOG_COMMENTS_COUNT_KEY, BLOG_COMMENTS_DIRTY_KEY), blogId.toString());
+            }
+        });
+        return Result.ok(entity.getId());
+    }
+
+    /**
+     * 查询博客的一级评论，新的在前
+     * @param blogId
+     * @param lastId 上一页最后一条评论的id，第一页不传
+     * @return
+     */
+    @Override
+    public Result queryCommentsOfBlog(Long blogId, Long lastId) {
+        List<BlogComments> comments;
+        if (lastId == null) {
+            // 1.第一页访问最多，走缓存
+            comments = cacheClient.queryListWithPassThrough(CACHE_COMMENTS_KEY + blogId, BlogComments.class,
+                    () -> queryCommentsPage(blogId, null), CACHE_COMMENTS_TTL, TimeUnit.MINUTES);
+        } else {
+            // 2.后面的页按游标查数据库 where blog_id = ? and parent_id = 0 and id < ? order by id desc limit ?
+            comments = queryCommentsPage(blogId, lastId);
+        }
+        // 3.补充用户信息、实时点赞数、是否点赞
+        List<BlogComments> all = new ArrayList<>(comments);
+        comments.forEach(c -> {
+            if (c.getReplies() != null) {
+                all.addAll(c.getReplies());
+            }
+        });
+        fillComments(all);
+        return Result.ok(new CursorResult(comments, nextCursor(comments)));
+    }
+
+    /**
+     * 查询一级评论下的回复，按时间顺序
+     * @param parentId
+     * @param lastId 上一页最后一条回复的id，第一页不传
+     * @return
+     */
+    @Override
+    public Result queryReplies(Long parentId, Long lastId) {
+        List<BlogComments> replies = query()
+                .eq("parent_id", parentId)
+                .gt(lastId != null, "id", lastId)
+                .orderByAsc("id")
+                .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        fillComments(replies);
+        return Result.ok(new CursorResult(replies, nextCursor(replies)));
+    }
+
+    /**
+     * 点赞/取消点赞评论
+     * @param id
+     * @return
+     */
+    @Override
+    public Result likeComment(Long id) {
+        Long userId = UserHolder.getUser().getId();
+        // 1.校验评论存在，已经有人点赞的评论不用再查数据库
+        String key = BLOG_COMMENT_LIKED_KEY + id;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key)) && query().eq("id", id).count() == 0) {
+            return Result.fail("评论不存在！");
+        }
+        // 2.判断是否已点赞、点赞/取消点赞、标记待写回、查询点赞数一次完成
+        @SuppressWarnings("unchecked")
+        List<Long> result = stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(key, BLOG_COMMENT_LIKE_DIRTY_KEY),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), id.toString());
+        BlogComments comment = new BlogComments()
+                .setId(id)
+                .setLiked(result.get(1).intValue())
+                .setIsLike(result.get(0) == 1L);
+        return Result.ok(comment);
+    }
+
+    /**
+     * 查询一页一级评论，并一次查出每条评论最早的几条回复
+     */
+    private List<BlogComments> queryCommentsPage(Long blogId, Long lastId) {
+        List<BlogComments> comments = query()
+                .eq("blog_id", blogId)
+                .eq("parent_id", 0)
+                .lt(lastId != null, "id", lastId)
+                .orderByDesc("id")
+                .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        if (comments.isEmpty()) {
+            return comments;
+        }
+        List<Long> parentIds = comments.stream().map(BlogComments::getId).collect(Collectors.toList());
+        Map<Long, List<BlogComments>> replies = getBaseMapper().selectFirstReplies(parentIds, REPLY_PREVIEW_SIZE)
+                .stream().collect(Collectors.groupingBy(BlogComments::getParentId));
+        comments.forEach(c -> c.setReplies(replies.getOrDefault(c.getId(), Collections.emptyList())));
+        return comments;
+    }
+
+    /**
+     * 批量补充评论人信息，管道一次查出实时点赞数和当前用户是否点赞
+     */
+    private void fillComments(List<BlogComments> comments) {
+        if (comments.isEmpty()) {
+            return;
+        }
+        // 1.评论人，一次MGET，未命中的一次IN查询
+        List<Long> userIds = comments.stream().map(BlogComments::getUserId).distinct().collect(Collectors.toList());
+        Map<Long, UserDTO> users = userService.queryUserByIds(userIds).stream()
+                .collect(Collectors.toMap(UserDTO::getId, u -> u));
+        // 2.点赞数、是否点赞，点赞用户ZSet不存在时保留查出来的点赞数
+        UserDTO user = UserHolder.getUser();
+        String userId = user == null ? null : user.getId().toString();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (BlogComments comment : comments) {
+                String key = BLOG_COMMENT_LIKED_KEY + comment.getId();
+                conn.exists(key);
+                conn.zCard(key);
+                if (userId != null) {
+                    conn.zScore(key, userId);
+                }
+            }
+            return null;
+        });
+        int step = userId == null ? 2 : 3;
+        for (int i = 0; i < comments.size(); i++) {
+            BlogComments comment = comments.get(i);
+            UserDTO author = users.get(comment.getUserId());
+            if (author != null) {
+                comment.setName(author.getNickName());
+                comment.setIcon(author.getIcon());
+            }
+            if (Boolean.TRUE.equals(results.get(i * step))) {
+                comment.setLiked(((Long) results.get(i * step + 1)).intValue());
+            }
+            comment.setIsLike(userId != null && results.get(i * step + 2) != null);
+        }
+    }
+
+    /**
+     * 不满一页说明没有下一页了
+     */
+    private static String nextCursor(List<BlogComments> list) {
+        if (list.size() < SystemConstants.MAX_PAGE_SIZE) {
+            return null;
+        }
+        return list.get(list.size() - 1).getId().toString();
+    }
 }
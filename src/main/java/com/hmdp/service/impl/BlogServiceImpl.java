@@ -1,33 +1,52 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.Follow;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IFollowService;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogHotRanking;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.FeedFanout;
+import com.hmdp.utils.FeedInbox;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_OF_USER_NAMESPACE;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
 import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
 
 /**
  * <p>
@@ -37,6 +56,7 @@ import static com.hmdp.utils.RedisConstants.FEED_KEY;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
@@ -47,23 +67,70 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IUserService userService;
 
     @Resource
-    private IFollowService followService;
+    private CacheClient cacheClient;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Resource
+    private BlogHotRanking blogHotRanking;
+
+    @Resource
+    private FeedFanout feedFanout;
+
+    @Resource
+    private FeedInbox feedInbox;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+    }
 
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-
-        records.forEach(blog -> {
-            // 查询blog发布人基本信息
-            this.queryBlogUser(blog);
-            // 是否已点过赞
-            this.isBlogLiked(blog);
-        });
+        // 以前是 ORDER BY liked DESC 分页 + COUNT(*)，首页每次都查MySQL，而且只看点赞数不看发布时间
+        // 现在从Redis中维护好的热度排行取出当前页的id，再从博客缓存中批量读取
+        int from = (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        List<Long> ids = blogHotRanking.page(from, SystemConstants.MAX_PAGE_SIZE);
+        List<Blog> records;
+        if (ids == null) {
+            // 排行还没有生成，降级为数据库查询
+            records = query()
+                    .orderByDesc("liked")
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false))
+                    .getRecords();
+        } else {
+            records = cacheClient.multiGetWithLogicalExpire(
+                    CACHE_BLOG_KEY, ids, Blog.class, this::listByIds, Blog::getId, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        }
+
+        // 缓存中的博客覆盖上实时的点赞数、评论数
+        overlayCounts(records);
+        // 批量查询blog发布人基本信息，以前每篇博客查一次
+        queryBlogUsers(records);
+        // 是否已点过赞，管道一次查完
+        isBlogsLiked(records);
+        return Result.ok(records);
+    }
+
+    /**
+     * 根据用户分页查询博客，分页结果缓存在该用户的命名空间下，发布新博客时整体失效，点赞数、评论数读取时覆盖
+     * @param userId
+     * @param current
+     * @return
+     */
+    @Override
+    public Result queryBlogOfUser(Long userId, Integer current) {
+        String key = cacheClient.namespaceKey(BLOG_OF_USER_NAMESPACE + userId, "page:" + current);
+        List<Blog> records = cacheClient.queryListWithPassThrough(key, Blog.class, () -> query()
+                .eq("user_id", userId)
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE))
+                .getRecords(), CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        // 分页缓存中的点赞数、评论数可能是几十分钟前的，覆盖为Redis中的实时值
+        overlayCounts(records);
         return Result.ok(records);
     }
 
@@ -76,36 +143,18 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result likeBlog(Long id) {
         // 1.获取登录用户
         Long userId = UserHolder.getUser().getId();
-        // 2.判断当前用户是否已经点赞 SISMEMBER key number
-        String key = BLOG_LIKED_KEY + id;
-        //Boolean member = stringRedisTemplate.opsForSet().isMember(key, userId.toString());
-        // 使用score()，如果sortedSet中存在该userId值，那么返回分数，如果不存在返回null
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        //boolean isMember = Boolean.TRUE.equals(member);
+        // 2.执行lua脚本：判断是否已点赞、点赞/取消点赞、标记待写回、查询点赞数一次完成
+        // 以前是 ZSCORE -> UPDATE数据库 -> ZADD/ZREM -> ZCARD 四次往返，判断和修改之间同一个用户连点两下会重复点赞
+        // 点赞数由BlogLikeFlusher每秒批量写回数据库
+        @SuppressWarnings("unchecked")
+        List<Long> result = stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKE_DIRTY_KEY),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), id.toString());
+        // 3.返回是否点赞和点赞数
         Blog blog = new Blog();
-
-        if (score == null){
-            // 3.如果未点赞，可以点赞
-            blog.setIsLike(true);
-            // 3.1.数据库点赞数+1
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            // 3.2.保存用户到Redis集合
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
-            }
-        } else {
-            // 4.如果已点赞，取消点赞
-            blog.setIsLike(false);
-            // 4.1.数据库点赞数-1
-            boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
-            // 4.2.把用户从Redis中移除
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().remove(key, userId.toString());
-            }
-        }
-
-        //blog.setLiked(((Blog) queryBlogById(id).getData()).getLiked());
-        blog.setLiked(stringRedisTemplate.opsForZSet().size(key).intValue());
+        blog.setIsLike(result.get(0) == 1L);
+        blog.setLiked(result.get(1).intValue());
         return Result.ok(blog);
     }
 
@@ -130,12 +179,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         /*List<UserDTO> userDTOS = userService.listByIds(ids).stream().map(user ->
                 BeanUtil.copyProperties(user, UserDTO.class)
         ).collect(Collectors.toList());*/
-        String idStr = StrUtil.join(",", ids);
-        List<UserDTO> userDTOS = userService.query()
-                .in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        // 以前用 ORDER BY FIELD 每次都查数据库，现在先查用户缓存，未命中的一次IN查询，结果按ids的顺序返回
+        List<UserDTO> userDTOS = userService.queryUserByIds(ids);
 
         // 4.返回
         return Result.ok(userDTOS);
@@ -146,25 +191,25 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 1.获取登录用户
         UserDTO user = UserHolder.getUser();
         blog.setUserId(user.getId());
+        // 发布时间在这里生成，推送时的score与之后重建收件箱时读到的create_time一致；datetime不保存毫秒，先截掉以免被进位
+        blog.setCreateTime(LocalDateTime.now().withNano(0));
         // 2.保存探店博文
         boolean isSuccess = save(blog);
         if (!isSuccess) {
             return Result.fail("新增笔记失败");
         }
-        // 3.查询笔记作者的所有粉丝 select * from tb_follow where follow_user_id = ?
-        List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
-        // 4.推送笔记id给所有粉丝
-        for (Follow follow : follows) {
-            // 4.1.获取粉丝id
-            Long fansId = follow.getUserId();
-            // 4.2.推送
-            // 每个用户在Redis中都有一个sortSet作为收件箱，可按时间戳进行排序，可用score作为角标排序，
-            // list也能满足以上两点，但是list的下标在分页查询时可能会出现问题：用rightPop，查询第二页前，收到新的推送，在查询第二页时会重复查询到第一页的部分推送
-            String key = FEED_KEY + fansId;
-            stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis());
+        // 作者的博客列表整体失效
+        cacheOutboxService.saveNamespaceBump(BLOG_OF_USER_NAMESPACE + user.getId());
+        // 加入热门排行，博客已经保存，失败了不影响发布，全量重算时会加进来
+        try {
+            blogHotRanking.update(Collections.singletonList(blog.getId()));
+        } catch (Exception e) {
+            log.error("博客{}加入热门排行失败", blog.getId(), e);
         }
-
-        // 5.返回id
+        // 3.推送笔记id给所有粉丝
+        // 以前在这里查出全部粉丝、逐个ZADD，粉丝越多发布越慢，现在交给后台任务分页、管道推送，进度可通过 /blog/fanout/{id} 查询；大V只写自己的发件箱
+        feedFanout.publish(blog);
+        // 4.返回id
         return Result.ok(blog.getId());
     }
 
@@ -179,10 +224,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 1.获取当前用户
         Long userId = UserHolder.getUser().getId();
 
+        // 刷新活跃时间，收件箱因长期不活跃被淘汰的，从关注的作者最近的博客重建
+        feedInbox.touch(userId);
+
         // 2.查询收件箱 ZREVRANGEBYSCORE key Max Min LIMIT offset count
-        String key = FEED_KEY + userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
-                .reverseRangeByScoreWithScores(key, 0, max, offset.longValue(), 2);
+        // 关注了大V的话，还要合并大V的发件箱
+        List<String> keys = new ArrayList<>();
+        keys.add(FEED_KEY + userId);
+        feedFanout.bigAuthorsFollowedBy(userId).forEach(authorId -> keys.add(FEED_OUTBOX_KEY + authorId));
+        List<ZSetOperations.TypedTuple<String>> typedTuples = mergeFeed(keys, max, offset, 2);
         // 3.非空判断
         if (typedTuples == null || typedTuples.isEmpty()) {
             return Result.ok();
@@ -191,7 +241,6 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         List<Long> ids = new ArrayList<>(typedTuples.size()); //不需要那么大的空间，且如果需要大空间一开始指定大小也就省的自动扩容
         long minTime = 0L;
         int os = 1;
-        StringBuilder ids_Str = new StringBuilder();
         /*
           这里foreach遍历的Set最后一个元素就一定是最小的，违反了我们学过的Set无序不可重复的认识，
           这是因为这里Set的实现类是LinkHashSet，这类集合有序无重复
@@ -199,7 +248,6 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         for (ZSetOperations.TypedTuple<String> tuple : typedTuples) {
             // 4.1.获取id
             String idStr = tuple.getValue();
-            ids_Str.append(idStr).append(",");
             ids.add(Long.valueOf(idStr)); // 这里用Long.valueOf()比用Long.parseLong()更好，后者返回的是long，需要自动装箱，前者返回的是Long，且做了判断，在-128~127范围是从LongCache缓存池中获取
             // 4.2.获取分数（时间戳）
             long time = tuple.getScore().longValue();
@@ -211,20 +259,17 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os++;
             }
         }
-        ids_Str.deleteCharAt(ids_Str.lastIndexOf(",")); //删去多余的逗号
         os = minTime == max ? offset + os : os;
-        // 5.根据id查询blog
-        // 不能直接listByIds(ids)，之前就说过，底层是SQL是in(id1, id2,...)，这样查出来的结果顺序并不是按ids的顺序进行排序的
-        // List<Blog> blogs = listByIds(ids);
-        System.out.println(ids_Str);
-        List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + ids_Str + ")").list();
+        // 5.根据id查询blog，与热门博客、详情页共用博客缓存，结果与ids顺序一致，未命中的一次IN查询
+        // 缓存中的点赞数、评论数可能是旧的，用Redis中的实时值覆盖，与详情页显示一致
+        List<Blog> blogs = cacheClient.multiGetWithLogicalExpire(
+                CACHE_BLOG_KEY, ids, Blog.class, this::listByIds, Blog::getId, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        overlayCounts(blogs);
 
-        for (Blog blog : blogs) {
-            // 查询blog发布人基本信息
-            queryBlogUser(blog);
-            // 查询blog是否被点赞
-            isBlogLiked(blog);
-        }
+        // 批量查询blog发布人基本信息
+        queryBlogUsers(blogs);
+        // 查询blog是否被点赞
+        isBlogsLiked(blogs);
 
         // 6.封装并返回
         ScrollResult scrollResult = new ScrollResult();
@@ -235,6 +280,88 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(scrollResult);
     }
 
+    /**
+     * 多个feed按 (时间戳倒序, id倒序) 合并后分页，顺序与单个ZSet的ZREVRANGEBYSCORE一致，max/offset的含义也不变
+     * @param keys 收件箱和关注的大V的发件箱
+     * @param max 上一页最小的时间戳
+     * @param offset 合并后跳过的条数
+     * @param count 每页条数
+     * @return
+     */
+    private List<ZSetOperations.TypedTuple<String>> mergeFeed(List<String> keys, long max, int offset, int count) {
+        // 1.只有收件箱，直接查询
+        if (keys.size() == 1) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(keys.get(0), 0, max, offset, count);
+            return tuples == null ? Collections.emptyList() : new ArrayList<>(tuples);
+        }
+        // 2.每个feed都可能贡献前offset+count条，管道一次取回
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.zRevRangeByScoreWithScores(key, 0, max, 0, offset + count);
+            }
+            return null;
+        });
+        // 3.k路归并：堆里放每个feed当前最大的一条
+        PriorityQueue<FeedHead> heap = new PriorityQueue<>(keys.size());
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) result;
+            if (tuples != null && !tuples.isEmpty()) {
+                Iterator<ZSetOperations.TypedTuple<String>> iterator = tuples.iterator();
+                heap.add(new FeedHead(iterator.next(), iterator));
+            }
+        }
+        List<ZSetOperations.TypedTuple<String>> merged = new ArrayList<>(count);
+        int skipped = 0;
+        while (!heap.isEmpty() && merged.size() < count) {
+            FeedHead head = heap.poll();
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                merged.add(head.tuple);
+            }
+            if (head.rest.hasNext()) {
+                heap.add(new FeedHead(head.rest.next(), head.rest));
+            }
+        }
+        return merged;
+    }
+
+    private static class FeedHead implements Comparable<FeedHead> {
+        private final ZSetOperations.TypedTuple<String> tuple;
+        private final Iterator<ZSetOperations.TypedTuple<String>> rest;
+
+        private FeedHead(ZSetOperations.TypedTuple<String> tuple, Iterator<ZSetOperations.TypedTuple<String>> rest) {
+            this.tuple = tuple;
+            this.rest = rest;
+        }
+
+        @Override
+        public int compareTo(FeedHead o) {
+            int c = Double.compare(o.tuple.getScore(), tuple.getScore());
+            return c != 0 ? c : o.tuple.getValue().compareTo(tuple.getValue());
+        }
+    }
+
+    /**
+     * 查询博客推送给粉丝的进度，只有作者本人可以查看
+     * @param id
+     * @return
+     */
+    @Override
+    public Result queryFanoutProgress(Long id) {
+        Map<Object, Object> progress = feedFanout.progress(id);
+        if (progress.isEmpty()) {
+            return Result.fail("推送任务不存在！");
+        }
+        if (!UserHolder.getUser().getId().toString().equals(progress.get("authorId"))) {
+            return Result.fail("无权查看！");
+        }
+        return Result.ok(progress);
+    }
+
     /**
      * 根据查看博客
      * @param id
@@ -243,47 +370,97 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Override
     public Result queryBlogById(Long id) {
         // 1.查询blog
-        Blog blog = getById(id);
+        // 以前每次查看都查一次tb_blog，现在博客正文走逻辑过期缓存，热门博客的详情页不再访问MySQL
+        Blog blog = cacheClient.queryWithLogicalExpire(
+                CACHE_BLOG_KEY, id, Blog.class, this::getById, CACHE_BLOG_TTL, TimeUnit.MINUTES);
         if (blog == null) {
             return Result.fail("笔记不存在！");
         }
-        // 2.查询blog发布人基本信息
-        queryBlogUser(blog);
-        // 3.查询blog是否被点赞
-        isBlogLiked(blog);
+        List<Blog> blogs = Collections.singletonList(blog);
+        // 2.点赞数、评论数取Redis中的实时值
+        overlayCounts(blogs);
+        // 3.查询blog发布人基本信息
+        queryBlogUsers(blogs);
+        // 4.查询blog是否被点赞
+        isBlogsLiked(blogs);
         return Result.ok(blog);
     }
 
+    /**
+     * 缓存中的点赞数、评论数可能是几十分钟前的，用Redis中的实时值覆盖，管道一次查完
+     * 点赞数为点赞用户ZSet的大小，ZSet不存在（被淘汰，或者没人点赞）时保留缓存中的值；评论数在 blog:comments:count 中没有时同样保留缓存中的值
+     * @param blogs
+     */
+    private void overlayCounts(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.exists(BLOG_LIKED_KEY + blog.getId());
+                conn.zCard(BLOG_LIKED_KEY + blog.getId());
+                conn.hGet(BLOG_COMMENTS_COUNT_KEY, blog.getId().toString());
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            Blog blog = blogs.get(i);
+            if (Boolean.TRUE.equals(results.get(3 * i))) {
+                blog.setLiked(((Long) results.get(3 * i + 1)).intValue());
+            }
+            Object comments = results.get(3 * i + 2);
+            if (comments != null) {
+                blog.setComments(Integer.valueOf(comments.toString()));
+            }
+        }
+    }
+
     /**
      * 判断用户是否已经点赞
      * 设置 isLike 属性，true为已点，false为未点
-     * @param blog
+     * 以前每篇博客一次ZSCORE，一页10篇就是10次往返，现在用管道一次发出
+     * @param blogs
      */
-    private void isBlogLiked(Blog blog) {
+    private void isBlogsLiked(List<Blog> blogs) {
+        // 1.获取登录用户，未登录不需要查询
         UserDTO user = UserHolder.getUser();
-        if (user == null) {
+        if (user == null || blogs.isEmpty()) {
             return;
         }
-
-        // 1.获取登录用户
-        Long userId = UserHolder.getUser().getId();
-        // 2.判断当前用户是否已经点赞 SISMEMBER key number
-        String key = "blog:liked:" + blog.getId();
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score != null);
+        String userId = user.getId().toString();
+        // 2.管道批量查询当前用户在每篇博客点赞ZSet中的分数
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.zScore(BLOG_LIKED_KEY + blog.getId(), userId);
+            }
+            return null;
+        });
+        // 3.有分数说明已点赞
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
     }
 
     /**
-     * 查询博客的发布人信息
-     * @param blog
+     * 批量查询博客的发布人信息，一次MGET，缓存未命中的一次IN查询
+     * @param blogs
      */
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        // 根据BlogId查询用户信息（基本信息）
-        User user = userService.getById(userId);
-        // 存入Blog
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+    private void queryBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).distinct().collect(Collectors.toList());
+        Map<Long, UserDTO> users = userService.queryUserByIds(userIds).stream()
+                .collect(Collectors.toMap(UserDTO::getId, u -> u));
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
     }
 
 
@@ -0,0 +1,61 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import com.hmdp.service.ICacheOutboxService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheOutboxRelay;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ *  服务实现类
+ * </p>
+ */
+@Service
+public class CacheOutboxServiceImpl extends ServiceImpl<CacheOutboxMapper, CacheOutbox> implements ICacheOutboxService {
+
+    @Resource
+    private CacheOutboxRelay cacheOutboxRelay;
+
+    @Override
+    public void saveInvalidation(String... keys) {
+        saveEvents(CacheOutbox.INVALIDATE, Arrays.asList(keys));
+    }
+
+    @Override
+    public void saveNamespaceBump(String... namespaces) {
+        saveEvents(CacheOutbox.BUMP_NAMESPACE, Arrays.asList(namespaces));
+    }
+
+    @Override
+    public void saveShopChange(Long... shopIds) {
+        List<String> payloads = new ArrayList<>(shopIds.length);
+        for (Long shopId : shopIds) {
+            payloads.add(shopId.toString());
+        }
+        saveEvents(CacheOutbox.SHOP_CHANGED, payloads);
+    }
+
+    /**
+     * 写入发件箱，并在事务提交后通知CacheOutboxRelay尽快处理
+     * 如果当前有事务，发件箱记录和业务数据一起提交或回滚；Redis的操作全部放到事务之外异步执行，不阻塞请求
+     */
+    private void saveEvents(String eventType, Collection<String> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        List<CacheOutbox> events = new ArrayList<>(payloads.size());
+        for (String payload : payloads) {
+            events.add(new CacheOutbox().setEventType(eventType).setPayload(payload).setRetryCount(0));
+        }
+        saveBatch(events);
+        cacheOutboxRelay.triggerAfterCommit();
+    }
+}
@@ -5,20 +5,34 @@ import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.annotation.CacheStrategy;
+import com.hmdp.annotation.RedisCache;
+import com.hmdp.annotation.RedisCacheEvict;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.dto.ShopSuggestion;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRebuildExecutor;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoIndex.GeoHit;
+import com.hmdp.utils.ShopGeoIndex.ShopPoint;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.ShopSuggestIndex;
 import com.hmdp.utils.SystemConstants;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.data.geo.Distance;
-import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -28,9 +42,8 @@ import javax.annotation.Resource;
 import java.sql.Time;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
@@ -60,14 +73,18 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // this::getById 是传递函数，lambda表达式，还可以写成 (x)->getById(x)
         // 方法定义传入形参类型为 Function<ID, R>，即要求传入一个有参有返回值函数
          */
-        Shop shop = cacheClient.queryWithPassThrough(CACHE_HOT_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        //Shop shop = cacheClient.queryWithPassThrough(CACHE_HOT_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         // 互斥锁解决缓存击穿
         //Shop shop = queryWithMutex(id);
 
         // 逻辑过期解决缓存击穿
+        // cache:hot: 由CacheWarmer以逻辑过期的格式预热，这里必须用同样的格式读取；没预热到的店铺第一次访问时查库写入
         //Shop shop = queryWithLogicalExpire(id);
-        //Shop shop = cacheClient.queryWithLogicalExpire(CACHE_HOT_KEY, id, Shop.class, this::getById, 10L, TimeUnit.SECONDS);//时间短点，便于测试
+        //Shop shop = cacheClient.queryWithLogicalExpire(CACHE_HOT_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        // 改为注解声明缓存，自己调用自己的方法要通过代理对象，否则切面不生效
+        Shop shop = ((IShopService) AopContext.currentProxy()).queryShopById(id);
 
         if (shop == null) {
             return Result.fail("店铺不存在！");
@@ -76,8 +93,32 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    // 简单线程池，这个阿里不建议使用，实际工作中要自己手动创建线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 根据id查询店铺，缓存由@RedisCache切面处理，方法体就是查数据库的逻辑
+     * @param id
+     * @return
+     */
+    @Override
+    @RedisCache(prefix = CACHE_HOT_KEY, key = "#id", strategy = CacheStrategy.LOGICAL_EXPIRE, ttl = CACHE_SHOP_TTL)
+    public Shop queryShopById(Long id) {
+        return getById(id);
+    }
+
+    // 共享的缓存重建线程池（有界队列 + 按key去重），不再自己new一个无界队列的线程池
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+
+    @Resource
+    private ShopSuggestIndex shopSuggestIndex;
 
     // 逻辑过期解决缓存击穿的部分就不用考虑缓存穿透了，默认一定查得到热点key（热点key需要先预热加载，即第一次缓存是我们自己放进去的）
     private Shop queryWithLogicalExpire(Long id) {
@@ -129,18 +170,22 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                 return shop;
             }
 
-            // Todo 6.3.获取锁成功，并DoubleCheck过期，则开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> { //lambda表达式形式
+            // 6.3.获取锁成功，并DoubleCheck过期，则交给共享的重建线程池，实现缓存重建
+            boolean submitted = cacheRebuildExecutor.submit(key, () -> { //lambda表达式形式
                 try {
                     // 重建缓存
                     this.saveShop2Redis(id, 20L); //这里测试使用逻辑过期时间有效期设置20s，实际业务不用这么短
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
                     // 释放锁
                     unlock(lockKey);
                 }
             });
+            if (!submitted) {
+                // 被去重或队列已满，锁在这里释放，直接返回旧数据
+                unlock(lockKey);
+            }
 
             // 这里还要DoubleCheck
             // 因为你成功获取互斥锁有一种可能时机是刚好有一个线程刚释放完互斥锁，也就证明此时缓存中的数据是新鲜热乎的，
@@ -284,21 +329,69 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * 注：@Transactional只会回滚MySQL的异常，其后发生的Redis异常并不会让其回滚数据库。Redis也不会回滚（这个和Redis采用的设计策略有关：不对回滚支持，保证操作的简单快速）
      *
      * 这里是单系统上的事务处理方法，如果是分布式，如数据库更新和缓存删除不在同一个系统上，则需要使用mq消息队列，异步通知对方删除缓存，要保证缓存一致性就需要使用TCC方案（SpringCloud内容）
+     *
+     * 现在改为发件箱模式：缓存失效事件和店铺数据在同一个事务里写入tb_cache_outbox（@RedisCacheEvict），提交后由CacheOutboxRelay异步删除，
+     * 删除失败会重试，不会再出现删缓存失败导致的脏数据；以前只删了cache:shop:，而查询实际读的是cache:hot:，两个都要删
      * @param shop
      * @return
      */
     @Override
     @Transactional
+    @RedisCacheEvict(prefixes = {CACHE_SHOP_KEY, CACHE_HOT_KEY}, key = "#shop.id")
     public Result update(Shop shop) {
         Long id = shop.getId();
         // 判断店铺id是否存在
         if (id == null) {
             return Result.fail("店铺id不能为空");
         }
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在！");
+        }
         // 1.更新数据库
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 所属类型（修改了类型则新旧两个类型）的店铺列表整体失效
+        if (shop.getTypeId() != null && !shop.getTypeId().equals(old.getTypeId())) {
+            cacheOutboxService.saveNamespaceBump(SHOP_OF_TYPE_NAMESPACE + old.getTypeId(), SHOP_OF_TYPE_NAMESPACE + shop.getTypeId());
+        } else {
+            cacheOutboxService.saveNamespaceBump(SHOP_OF_TYPE_NAMESPACE + old.getTypeId());
+        }
+        // 同步Redis和各节点内存中的地理位置索引（包括修改了类型、坐标的情况）
+        cacheOutboxService.saveShopChange(id);
+        // 2.删除缓存：由@RedisCacheEvict在同一个事务中写入缓存失效事件，事务提交后异步删除
+        return Result.ok();
+    }
+
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        // 该类型的店铺列表整体失效
+        cacheOutboxService.saveNamespaceBump(SHOP_OF_TYPE_NAMESPACE + shop.getTypeId());
+        cacheOutboxService.saveShopChange(shop.getId());
+        // 返回店铺id
+        return Result.ok(shop.getId());
+    }
+
+    /**
+     * 删除店铺，和update一样通过发件箱删除缓存、同步地理位置索引
+     * @param id
+     * @return
+     */
+    @Override
+    @Transactional
+    @RedisCacheEvict(prefixes = {CACHE_SHOP_KEY, CACHE_HOT_KEY}, key = "#id")
+    public Result deleteShop(Long id) {
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在！");
+        }
+        // 1.删除数据库
+        removeById(id);
+        // 2.该类型的店铺列表整体失效，从地理位置索引中移除
+        cacheOutboxService.saveNamespaceBump(SHOP_OF_TYPE_NAMESPACE + old.getTypeId());
+        cacheOutboxService.saveShopChange(id);
         return Result.ok();
     }
 
@@ -306,18 +399,215 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
         // 1.判断是否需要根据经纬度坐标查询
         if (x == null || y == null){
-            // 不需要坐标查询，按数据库查询
-            Page<Shop> page = query()
+            // 不需要坐标查询，按数据库查询，分页结果缓存在该类型的命名空间下，类型下的店铺有变化时整体失效
+            String key = cacheClient.namespaceKey(SHOP_OF_TYPE_NAMESPACE + typeId, "page:" + current);
+            List<Shop> shops = cacheClient.queryListWithPassThrough(key, Shop.class, () -> query()
                     .eq("type_id", typeId)
-                    .page(new Page<>(current, DEFAULT_PAGE_SIZE));
+                    .page(new Page<>(current, DEFAULT_PAGE_SIZE))
+                    .getRecords(), CACHE_SHOP_TTL, TimeUnit.MINUTES);
             // 返回数据
-            return Result.ok(page.getRecords());
+            return Result.ok(shops);
         }
 
         // 2.计算分页参数 要查的页包含元素为 (current-1)*页面大小 ~ current*页面大小
         int from = (current - 1) * DEFAULT_PAGE_SIZE;
-        int end = from + DEFAULT_PAGE_SIZE;
-        // 3.查询redis，按照距离排序、分页。结果：shopId、distance
+        // 3.按照距离排序、分页。结果：shopId、distance
+        // 优先查内存中的地理位置索引，只计算、排序半径内的店铺，直接截取当前页；索引还没加载好时降级为Redis GEO
+        List<GeoHit> hits = shopGeoIndex.search(typeId.longValue(), x, y, SHOP_GEO_RADIUS, from, DEFAULT_PAGE_SIZE);
+        if (hits == null) {
+            hits = searchByRedisGeo(typeId, x, y, from);
+        }
+        // 4.根据id查询Shop，没有下一页时hits为空，直接返回空集合
+        // 5.返回
+        return Result.ok(loadShops(hits));
+    }
+
+    /**
+     * 游标分页查询附近的店铺，游标为上一页最后一个店铺的 距离_id，每一页都从游标处继续，不再从头查到当前页
+     * @param cursor 为空代表第一页
+     */
+    @Override
+    public Result scrollShopByType(Integer typeId, Double x, Double y, String cursor) {
+        // 1.解析游标
+        GeoHit after = null;
+        if (StrUtil.isNotBlank(cursor)) {
+            after = GeoHit.parseCursor(cursor);
+            if (after == null) {
+                return Result.fail("无效的游标！");
+            }
+        }
+        // 2.从游标处继续查询一页，内存索引不可用时降级为Redis中缓存的结果集
+        List<GeoHit> hits = shopGeoIndex.searchAfter(typeId.longValue(), x, y, SHOP_GEO_RADIUS, after, DEFAULT_PAGE_SIZE);
+        if (hits == null) {
+            hits = scrollByRedisGeo(typeId, x, y, after, DEFAULT_PAGE_SIZE);
+        }
+        // 3.不满一页说明没有下一页了
+        String next = hits.size() < DEFAULT_PAGE_SIZE ? null : hits.get(hits.size() - 1).toCursor();
+        return Result.ok(new CursorResult(loadShops(hits), next));
+    }
+
+    /**
+     * 根据名称（或地址）搜索店铺
+     * 以前是 name LIKE '%x%' 分页，每次都全表扫描再COUNT(*)；现在查内存中的倒排索引得到排好序的当前页id，再从店铺缓存中批量读取
+     */
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        int from = (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        // 1.查询倒排索引
+        List<Long> ids = shopSearchIndex.search(name, from, SystemConstants.MAX_PAGE_SIZE);
+        if (ids == null) {
+            // 2.索引还没加载好，降级为数据库查询
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
+            return Result.ok(page.getRecords());
+        }
+        // 3.从店铺缓存中批量读取
+        List<Shop> shops = cacheClient.multiGetWithLogicalExpire(
+                CACHE_HOT_KEY, ids, Shop.class, this::listByIds, Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        return Result.ok(shops);
+    }
+
+    /**
+     * 搜索框自动补全，每输入一个字调用一次，直接返回字典树节点上预先算好的结果
+     */
+    @Override
+    public Result suggest(String prefix, Integer limit) {
+        // 与索引使用同样的规范化，两条路径对同一个输入给出同样的结果
+        String key = ShopSuggestIndex.normalize(prefix);
+        if (key.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        int size = limit == null ? ShopSuggestIndex.TOP_K : Math.max(1, Math.min(limit, ShopSuggestIndex.TOP_K));
+        List<ShopSuggestion> suggestions = shopSuggestIndex.suggest(key, size);
+        if (suggestions == null) {
+            // 索引还没加载好，降级为数据库前缀查询（可以走name上的索引），转义 % 和 _ 避免被当作通配符
+            suggestions = query()
+                    .select("id", "name")
+                    .likeRight("name", escapeLike(key))
+                    .orderByDesc("sold")
+                    .last("LIMIT " + size)
+                    .list()
+                    .stream()
+                    .map(shop -> new ShopSuggestion(shop.getId(), shop.getName()))
+                    .collect(Collectors.toList());
+        }
+        return Result.ok(suggestions);
+    }
+
+    /**
+     * 转义LIKE中的通配符，MySQL默认的转义字符为反斜杠
+     */
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * 按价格区间、最低评分、是否营业中筛选，按距离/评分/销量排序，筛选在服务端的内存索引上完成，只返回符合条件的店铺
+     * @param x 经度，为空则不限距离
+     * @param y 纬度，为空则不限距离
+     */
+    @Override
+    public Result queryShopByFilter(Integer typeId, Integer current, Double x, Double y, ShopFilter filter) {
+        // 1.校验排序方式
+        String sortBy = filter.getSortBy();
+        if (sortBy != null && !ShopFilter.SORT_DISTANCE.equals(sortBy)
+                && !ShopFilter.SORT_SCORE.equals(sortBy) && !ShopFilter.SORT_SOLD.equals(sortBy)) {
+            return Result.fail("不支持的排序方式！");
+        }
+        int from = (current - 1) * DEFAULT_PAGE_SIZE;
+        // 2.在内存索引上筛选、排序、分页
+        List<GeoHit> hits = shopGeoIndex.filter(typeId.longValue(), x, y, SHOP_GEO_RADIUS, filter, from, DEFAULT_PAGE_SIZE);
+        if (hits == null) {
+            // 3.索引还没加载好，从数据库查出该类型下价格、评分符合条件的店铺，再用同样的逻辑筛选
+            List<ShopPoint> candidates = query()
+                    .select("id", "type_id", "x", "y", "avg_price", "score", "sold", "open_hours")
+                    .eq("type_id", typeId)
+                    .ge(filter.getMinPrice() != null, "avg_price", filter.getMinPrice())
+                    .le(filter.getMaxPrice() != null, "avg_price", filter.getMaxPrice())
+                    .ge(filter.getMinScore() != null, "score", filter.getMinScore())
+                    .list()
+                    .stream()
+                    .map(ShopPoint::of)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            hits = ShopGeoIndex.filter(candidates, x, y, SHOP_GEO_RADIUS, filter, from, DEFAULT_PAGE_SIZE);
+        }
+        // 4.从店铺缓存中批量读取
+        return Result.ok(loadShops(hits));
+    }
+
+    /**
+     * 根据查询结果的id查询Shop，按查询结果的顺序返回并填充距离（没有坐标的查询距离为NaN，不填充）
+     * 缓存与queryShopById共用 cache:hot:，店铺修改后由发件箱删除
+     */
+    private List<Shop> loadShops(List<GeoHit> hits) {
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(hits.size());
+        Map<Long, Double> distanceMap = new HashMap<>(hits.size());
+        for (GeoHit hit : hits) {
+            ids.add(hit.getId());
+            distanceMap.put(hit.getId(), hit.getDistance());
+        }
+        // 以前每页都 ORDER BY FIELD 查一次MySQL，现在从店铺缓存中批量读取（一次MGET），只有未命中的才批量查库，顺序在内存中按ids恢复
+        //String idStr = StrUtil.join(",", ids);
+        //List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        List<Shop> shops = cacheClient.multiGetWithLogicalExpire(
+                CACHE_HOT_KEY, ids, Shop.class, this::listByIds, Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        for (Shop shop : shops) {
+            Double distance = distanceMap.get(shop.getId());
+            if (!distance.isNaN()) {
+                shop.setDistance(distance);
+            }
+        }
+        return shops;
+    }
+
+    /**
+     * 游标分页的Redis降级方案
+     * 坐标量化到0.001度（约100米），同一个位置附近的请求共享一份用GEOSEARCHSTORE生成的结果集（按距离排序的ZSet），
+     * 翻页时按分数从游标处往后取，不用每页都重新GEOSEARCH；距离是相对量化后的坐标计算的，误差在百米以内
+     */
+    private List<GeoHit> scrollByRedisGeo(Integer typeId, Double x, Double y, GeoHit after, int size) {
+        // 1.量化坐标
+        double qx = Math.round(x * 1000) / 1000.0;
+        double qy = Math.round(y * 1000) / 1000.0;
+        String key = SHOP_GEO_RESULT_KEY + typeId + ":" + qx + ":" + qy;
+        // 2.结果集不存在则生成，score为距离（米）
+        if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(key))) {
+            stringRedisTemplate.opsForGeo().searchAndStore(
+                    SHOP_GEO_KEY + typeId,
+                    key,
+                    GeoReference.fromCoordinate(qx, qy),
+                    new Distance(SHOP_GEO_RADIUS),
+                    RedisGeoCommands.GeoSearchStoreCommandArgs.newGeoSearchStoreArgs().storeDistance());
+            stringRedisTemplate.expire(key, SHOP_GEO_RESULT_TTL, TimeUnit.SECONDS);
+        }
+        // 3.从游标的距离开始取一页，和游标距离相同的店铺要多取出来，按id再比较一次
+        double min = after == null ? 0 : after.getDistance();
+        Long ties = stringRedisTemplate.opsForZSet().count(key, min, min);
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(key, min, Double.POSITIVE_INFINITY, 0, size + (ties == null ? 0 : ties));
+        if (tuples == null) {
+            return Collections.emptyList();
+        }
+        List<GeoHit> hits = new ArrayList<>(tuples.size());
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            GeoHit hit = new GeoHit(Long.valueOf(tuple.getValue()), tuple.getScore());
+            if (after == null || GeoHit.ORDER.compare(hit, after) > 0) {
+                hits.add(hit);
+            }
+        }
+        hits.sort(GeoHit.ORDER);
+        return hits.size() > size ? hits.subList(0, size) : hits;
+    }
+
+    /**
+     * 通过Redis GEO查询附近的店铺，内存索引不可用时的降级方案
+     */
+    public List<GeoHit> searchByRedisGeo(Integer typeId, Double x, Double y, int from) {
         // geo的search指令有两种：
         // 根据一个已存入redis的geo点来查询：GEOSEARCH key BYMEMBER BYADIUS 10 WITHDISTANCE
         // 根据一个指定的坐标来查询来查询：GEOSEARCH key BYLONLAT x y BYADIUS 10 WITHDISTANCE
@@ -327,41 +617,19 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                 .search(
                         key,
                         GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
-                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
+                        new Distance(SHOP_GEO_RADIUS),
+                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(from + DEFAULT_PAGE_SIZE)
                 ); // 最后一个是查询参数，后面includeDistance()是要求返回值携带距离，
                    // limit(end)是查询条数，尴尬的是它只有一个参数用于指定结束位置，也就是每次查询都是从第1条到end，后面还需要我们自己逻辑分页截取出当前页部分的数据
-        // 4.解析出id
         if (results == null) {
-            return Result.ok(Collections.emptyList());
-        }
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size() <= from) {
-            // 没有下一页了，结束
-            return Result.ok(Collections.emptyList());
+            return Collections.emptyList();
         }
-        // 4.1.截取 from ~ end的部分
-        // 用stream.skip() 跳过的方式优于 list.subList()，因为后者还要拷贝集合，前者更节省内存
-        //List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list1 = list.subList(from, end);
-        ArrayList<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>(list.size());
-        list.stream().skip(from).forEach(result -> {
-            // 4.2.获取店铺id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            // 4.3.获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        // 5.根据id查询Shop
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
-        //shops.forEach(shop -> shop.setDistance(distanceMap.get(shop.getId().toString()).getValue()));
-        for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
-        }
-        // 6.返回
-        return Result.ok(shops);
+        // 截取 from ~ end的部分
+        List<GeoHit> hits = new ArrayList<>(DEFAULT_PAGE_SIZE);
+        results.getContent().stream().skip(from).forEach(result -> hits.add(new GeoHit(
+                Long.valueOf(result.getContent().getName()),
+                result.getDistance().getValue())));
+        return hits;
     }
 
 }
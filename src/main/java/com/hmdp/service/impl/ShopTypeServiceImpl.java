@@ -1,22 +1,30 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeCatalog;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.service.ICacheOutboxService;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_NAMESPACE_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_NAMESPACE;
 
 /**
  * <p>
@@ -26,35 +34,108 @@ import java.util.concurrent.TimeUnit;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 /*ServiceImpl<ShopTypeMapper, ShopType>是MybatisPlus的单表操作要求，ShopType类里面有指向对应单表的注解*/
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    // 类型目录的不可变快照，整体替换，读取时不用访问Redis、不用反序列化
+    private volatile ShopTypeCatalog catalog;
+
+    /**
+     * 类型命名空间升级版本号时（CacheClient.bumpNamespace会发布到 cache:invalidate 频道）重新加载
+     */
+    @PostConstruct
+    private void subscribe() {
+        String versionKey = CACHE_NAMESPACE_KEY + SHOP_TYPE_NAMESPACE;
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (Arrays.asList(body.split(",")).contains(versionKey)) {
+                reloadCatalog();
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 定时对比版本号兜底，防止漏掉消息
+     */
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public void checkCatalogVersion() {
+        ShopTypeCatalog current = catalog;
+        if (current != null && current.getVersion() != cacheClient.loadNamespaceVersion(SHOP_TYPE_NAMESPACE)) {
+            reloadCatalog();
+        }
+    }
 
     @Override
-    public Result queryTypeList() {
-        //使用list取 【0 -1】 代表全部
-        List<String> shopTypeList = stringRedisTemplate.opsForList().range("shop:list", 0, -1);
-        System.out.println("shopTypeList = " + shopTypeList);
-        if (CollectionUtil.isNotEmpty(shopTypeList)) {
-            //shopTypeList.get(0) 其实是获取了整个List集合里的元素（因为里面多套了一个[]）
-            List<ShopType> types = JSONUtil.toList(shopTypeList.get(0), ShopType.class);
-            return Result.ok(types);
+    public ShopTypeCatalog getCatalog() {
+        ShopTypeCatalog current = catalog;
+        if (current == null) {
+            current = reloadCatalog();
         }
+        return current;
+    }
 
+    /**
+     * 先读版本号再查数据库，中间有修改的话会再收到一次通知，不会停留在旧数据上
+     */
+    private synchronized ShopTypeCatalog reloadCatalog() {
+        long version = cacheClient.loadNamespaceVersion(SHOP_TYPE_NAMESPACE);
         List<ShopType> typeList = query().orderByAsc("sort").list();
+        catalog = new ShopTypeCatalog(version, typeList);
+        log.debug("店铺类型目录已加载，版本：{}，共{}个类型", version, typeList.size());
+        return catalog;
+    }
 
-        if (CollectionUtil.isEmpty(typeList)) {
-            return Result.fail("列表信息不存在");
+    @Override
+    @Transactional
+    public Result saveShopType(ShopType shopType) {
+        // 1.写入数据库
+        save(shopType);
+        // 2.类型目录升级版本号，与写入在同一个事务中记录，提交后各节点重新加载
+        cacheOutboxService.saveNamespaceBump(SHOP_TYPE_NAMESPACE);
+        return Result.ok(shopType.getId());
+    }
+
+    @Override
+    @Transactional
+    public Result updateShopType(ShopType shopType) {
+        if (shopType.getId() == null) {
+            return Result.fail("店铺类型id不能为空");
+        }
+        // 1.更新数据库
+        if (!updateById(shopType)) {
+            return Result.fail("店铺类型不存在！");
         }
+        // 2.类型目录升级版本号
+        cacheOutboxService.saveNamespaceBump(SHOP_TYPE_NAMESPACE);
+        return Result.ok();
+    }
 
-        //list 存
-        String jsonStr = JSONUtil.toJsonStr(typeList);
-        stringRedisTemplate.opsForList().leftPushAll("shop:list", jsonStr);
-        stringRedisTemplate.expire("shop:list", 30L, TimeUnit.MINUTES);
+    @Override
+    public Result queryTypeList() {
+        return queryTypeList(getCatalog());
+    }
 
+    /**
+     * 用指定的快照构造响应，与计算ETag使用同一个快照，ETag和列表内容一定对应
+     */
+    @Override
+    public Result queryTypeList(ShopTypeCatalog catalog) {
+        // 以前是读Redis中的list，取出唯一的一个元素再解析json；现在直接返回内存中的快照
+        List<ShopType> typeList = catalog.getTypes();
+        if (CollectionUtil.isEmpty(typeList)) {
+            return Result.fail("列表信息不存在");
+        }
         return Result.ok(typeList);
 
         /*// 使用String类型存储到Redis
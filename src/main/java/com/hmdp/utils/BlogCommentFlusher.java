@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.BlogComments;
+import com.hmdp.mapper.BlogCommentsMapper;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENT_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENT_LIKE_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENT_LIKE_FLUSHING_KEY;
+
+/**
+ * 评论相关计数异步写回数据库（write-behind），改名、分批、加锁的流程见WriteBehindFlusher
+ * 1.博客评论数：按评论表重新统计后写入tb_blog.comments，再把统计结果写回 blog:comments:count，
+ *   统计期间新增的评论会再次进入dirty，下一轮修正；最后重算这些博客的热度
+ * 2.评论点赞数：ZCARD得到的总数写入tb_blog_comments.liked，与博客点赞一样，ZSet不存在说明最后一个人取消了点赞，写回0
+ */
+@Slf4j
+@Component
+public class BlogCommentFlusher {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private BlogCommentsMapper blogCommentsMapper;
+
+    @Resource
+    private BlogHotRanking blogHotRanking;
+
+    @Resource
+    private WriteBehindFlusher writeBehindFlusher;
+
+    @Scheduled(fixedDelay = 1000)
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 停机前再写回一次
+     */
+    @PreDestroy
+    private void shutdown() {
+        flush();
+    }
+
+    public void flush() {
+        writeBehindFlusher.flush(BLOG_COMMENTS_DIRTY_KEY, BLOG_COMMENTS_FLUSHING_KEY, this::flushCommentCounts);
+        writeBehindFlusher.flush(BLOG_COMMENT_LIKE_DIRTY_KEY, BLOG_COMMENT_LIKE_FLUSHING_KEY, this::flushCommentLikes);
+    }
+
+    private void flushCommentCounts(List<String> ids) {
+        List<Long> blogIds = ids.stream().map(Long::valueOf).collect(Collectors.toList());
+        // 1.按评论表重新统计
+        blogMapper.updateCommentsBatch(blogIds);
+        // 2.统计结果写回Redis，作为之后+1的基数
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "comments")
+                .in("id", blogIds));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.hSet(BLOG_COMMENTS_COUNT_KEY, blog.getId().toString(),
+                        String.valueOf(blog.getComments() == null ? 0 : blog.getComments()));
+            }
+            return null;
+        });
+        // 3.重算这些博客的热度，失败了也不影响写回，全量重算时会修正
+        try {
+            blogHotRanking.update(blogIds);
+        } catch (Exception e) {
+            log.error("更新热门博客排行失败", e);
+        }
+    }
+
+    private void flushCommentLikes(List<String> ids) {
+        // 1.管道批量查询点赞总数，ZSet不存在时为0
+        List<Object> counts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String id : ids) {
+                conn.zCard(BLOG_COMMENT_LIKED_KEY + id);
+            }
+            return null;
+        });
+        // 2.一条语句写回
+        List<BlogComments> comments = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            comments.add(new BlogComments()
+                    .setId(Long.valueOf(ids.get(i)))
+                    .setLiked(((Long) counts.get(i)).intValue()));
+        }
+        blogCommentsMapper.updateLikedBatch(comments);
+    }
+}
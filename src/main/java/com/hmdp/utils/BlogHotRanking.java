@@ -0,0 +1,152 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_SIZE;
+import static com.hmdp.utils.RedisConstants.LOCK_KEY_PREFIX;
+
+/**
+ * 热门博客排行 blog:hot（ZSet，score为热度）
+ * 热度 = log10(max(点赞数 + 2 * 评论数, 1)) + (发布时间 - 2022-01-01) / 45000秒
+ * 发布时间每晚12.5小时，需要多10倍的互动才能排在同样的位置；这个分数不随当前时间变化，
+ * 所以某篇博客的分数更新后和其它博客仍然可以直接比较，不需要每次都重算全部
+ * 1.增量：点赞数写回数据库、发布新博客、评论后，只重算这些博客的分数
+ * 2.全量：每10分钟重算最近30天的博客（分批读取，写入临时key后RENAME），修正漏掉的事件、移除过期的博客，多个节点只有一个执行
+ */
+@Slf4j
+@Component
+public class BlogHotRanking {
+
+    private static final long EPOCH_SECONDS = 1640966400L;
+    private static final double DECAY_SECONDS = 45000;
+    private static final int WINDOW_DAYS = 30;
+    private static final int PAGE_SIZE = 1000;
+    private static final String REBUILD_KEY = BLOG_HOT_KEY + ":rebuild";
+    // 重算锁的有效期，每写完一批续期一次，秒
+    private static final long REBUILD_LOCK_TTL = 5 * 60L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    /**
+     * 查询一页热门博客
+     * @return 博客id，排行还没有生成时返回null
+     */
+    public List<Long> page(int from, int size) {
+        Set<String> ids = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, from, from + size - 1);
+        if (CollUtil.isEmpty(ids)) {
+            return BooleanUtil.isTrue(stringRedisTemplate.hasKey(BLOG_HOT_KEY)) ? Collections.emptyList() : null;
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 重算这些博客的分数
+     */
+    public void update(Collection<Long> blogIds) {
+        if (CollUtil.isEmpty(blogIds)) {
+            return;
+        }
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "liked", "comments", "create_time")
+                .in("id", blogIds));
+        LocalDateTime windowStart = LocalDateTime.now().minusDays(WINDOW_DAYS);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                if (blog.getCreateTime() != null && blog.getCreateTime().isAfter(windowStart)) {
+                    conn.zAdd(BLOG_HOT_KEY, score(blog), blog.getId().toString());
+                }
+            }
+            // 只保留前BLOG_HOT_SIZE篇
+            conn.zRemRange(BLOG_HOT_KEY, 0, -BLOG_HOT_SIZE - 1);
+            return null;
+        });
+    }
+
+    /**
+     * 全量重算
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000)
+    public void rebuild() {
+        // 锁的值区分持有者，释放时只删自己的锁；重算超过有效期时不会删掉其它节点的锁
+        SimpleRedisLock lock = new SimpleRedisLock(BLOG_HOT_KEY, stringRedisTemplate);
+        if (!lock.tryLock(REBUILD_LOCK_TTL)) {
+            return;
+        }
+        try {
+            long begin = System.currentTimeMillis();
+            stringRedisTemplate.delete(REBUILD_KEY);
+            // 1.按id分批读取最近30天的博客
+            LocalDateTime windowStart = LocalDateTime.now().minusDays(WINDOW_DAYS);
+            long lastId = 0;
+            int total = 0;
+            while (true) {
+                List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                        .select("id", "liked", "comments", "create_time")
+                        .gt("id", lastId)
+                        .ge("create_time", windowStart)
+                        .orderByAsc("id")
+                        .last("LIMIT " + PAGE_SIZE));
+                if (blogs.isEmpty()) {
+                    break;
+                }
+                // 2.管道写入临时key，每批写完裁剪一次，临时key不会太大
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Blog blog : blogs) {
+                        conn.zAdd(REBUILD_KEY, score(blog), blog.getId().toString());
+                    }
+                    conn.zRemRange(REBUILD_KEY, 0, -BLOG_HOT_SIZE - 1);
+                    return null;
+                });
+                total += blogs.size();
+                lastId = blogs.get(blogs.size() - 1).getId();
+                stringRedisTemplate.expire(LOCK_KEY_PREFIX + BLOG_HOT_KEY, REBUILD_LOCK_TTL, TimeUnit.SECONDS);
+                if (blogs.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            // 3.覆盖正式key
+            if (total == 0) {
+                stringRedisTemplate.delete(BLOG_HOT_KEY);
+            } else {
+                stringRedisTemplate.rename(REBUILD_KEY, BLOG_HOT_KEY);
+            }
+            log.info("热门博客排行重算完成，共{}篇博客，耗时{}ms", total, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("热门博客排行重算失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static double score(Blog blog) {
+        int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+        int comments = blog.getComments() == null ? 0 : blog.getComments();
+        double weight = Math.max(liked + 2.0 * comments, 1);
+        long seconds = blog.getCreateTime().atZone(ZoneId.systemDefault()).toEpochSecond() - EPOCH_SECONDS;
+        return Math.log10(weight) + seconds / DECAY_SECONDS;
+    }
+}
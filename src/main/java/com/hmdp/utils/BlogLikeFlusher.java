@@ -0,0 +1,88 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_FLUSHING_KEY;
+
+/**
+ * 点赞数异步写回数据库（write-behind），改名、分批、加锁的流程见WriteBehindFlusher
+ * 点赞/取消点赞（like.lua）只修改Redis中的点赞用户ZSet，并把博客id加入 blog:like:dirty；这里每秒把有变化的博客批量写回tb_blog
+ * 1.写回的是ZCARD得到的点赞总数而不是增量，重复写回结果也一样，所以可以放心重试
+ * 2.在dirty中的博客刚被点赞或取消点赞过，此时ZSet不存在说明最后一个人取消了点赞（Redis会删除空的ZSet），ZCARD为0，照常写回0；
+ *   取消点赞也只标记dirty，不在请求中写数据库，避免和写回线程互相覆盖
+ * 3.一页最多500篇博客，一条 UPDATE ... CASE id WHEN ... 语句写完，热门博客再多人点赞一秒也只写一次
+ */
+@Slf4j
+@Component
+public class BlogLikeFlusher {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private BlogHotRanking blogHotRanking;
+
+    @Resource
+    private WriteBehindFlusher writeBehindFlusher;
+
+    @Scheduled(fixedDelay = 1000)
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 停机前再写回一次
+     */
+    @PreDestroy
+    private void shutdown() {
+        flush();
+    }
+
+    public void flush() {
+        writeBehindFlusher.flush(BLOG_LIKE_DIRTY_KEY, BLOG_LIKE_FLUSHING_KEY, this::flushBatch);
+    }
+
+    private void flushBatch(List<String> ids) {
+        // 1.管道批量查询点赞总数，ZSet不存在时为0
+        List<Object> counts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String id : ids) {
+                conn.zCard(BLOG_LIKED_KEY + id);
+            }
+            return null;
+        });
+        // 2.一条语句写回
+        List<Blog> blogs = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Blog blog = new Blog();
+            blog.setId(Long.valueOf(ids.get(i)));
+            blog.setLiked(((Long) counts.get(i)).intValue());
+            blogs.add(blog);
+        }
+        blogMapper.updateLikedBatch(blogs);
+        // 3.重算这些博客的热度，失败了也不影响写回，全量重算时会修正
+        try {
+            blogHotRanking.update(blogs.stream().map(Blog::getId).collect(Collectors.toList()));
+        } catch (Exception e) {
+            log.error("更新热门博客排行失败", e);
+        }
+    }
+}
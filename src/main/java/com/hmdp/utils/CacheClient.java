@@ -4,15 +4,28 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -31,9 +44,42 @@ public class CacheClient {
     // @Resource和@Autowired不能为final修饰的变量注入赋值
     private final StringRedisTemplate stringRedisTemplate;
 
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final CacheMetrics cacheMetrics;
+
+    // 冷key加载时没拿到锁的线程最多重读缓存的次数，每次间隔50ms
+    private static final int COLD_KEY_RETRY = 20;
+    // 按需加载的逻辑过期key，物理TTL为逻辑过期时间的倍数
+    private static final long COLD_KEY_TTL_FACTOR = 2;
+
+    // 命名空间版本号的本地缓存，namespace -> 版本号
+    private final Map<String, NamespaceVersion> namespaceVersions = new ConcurrentHashMap<>();
+
     // SpringIoc容器默认先使用
-    public  CacheClient(StringRedisTemplate stringRedisTemplate) {
+    public  CacheClient(StringRedisTemplate stringRedisTemplate, CacheRebuildExecutor cacheRebuildExecutor,
+                        RedisMessageListenerContainer redisMessageListenerContainer, CacheMetrics cacheMetrics) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * 订阅缓存失效频道，其他节点升级了命名空间版本号时，清掉本地缓存的版本号
+     */
+    @PostConstruct
+    private void subscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            for (String key : body.split(",")) {
+                if (key.startsWith(CACHE_NAMESPACE_KEY)) {
+                    namespaceVersions.remove(key.substring(CACHE_NAMESPACE_KEY.length()));
+                }
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
     }
 
     /*
@@ -54,6 +100,82 @@ public class CacheClient {
         stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
     }
 
+    /**
+     * 生成带命名空间版本号的key：{namespace}:v{version}:{suffix}
+     * 一组相关的缓存（例如某个类型下所有店铺的分页）放在同一个命名空间下，
+     * 需要整体失效时只要升级版本号（bumpNamespace），新请求就会用新key，旧key不用删，等TTL自然过期
+     * @param namespace 命名空间，例如 shop:type:1
+     * @param suffix
+     * @return
+     */
+    public String namespaceKey(String namespace, Object suffix) {
+        return namespace + ":v" + getNamespaceVersion(namespace) + ":" + suffix;
+    }
+
+    /**
+     * 获取命名空间当前版本号，本地缓存一小段时间，避免每次拼key都要访问一次Redis
+     */
+    public long getNamespaceVersion(String namespace) {
+        NamespaceVersion cached = namespaceVersions.get(namespace);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadTime < CACHE_NAMESPACE_LOCAL_TTL) {
+            return cached.version;
+        }
+        long v = loadNamespaceVersion(namespace);
+        namespaceVersions.put(namespace, new NamespaceVersion(v, now));
+        return v;
+    }
+
+    /**
+     * 直接从Redis读取命名空间的版本号，不经过本地缓存
+     */
+    public long loadNamespaceVersion(String namespace) {
+        String version = stringRedisTemplate.opsForValue().get(CACHE_NAMESPACE_KEY + namespace);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    /**
+     * 升级命名空间版本号，使整个命名空间下的缓存立即失效，并通知其他节点
+     * @return 新的版本号
+     */
+    public long bumpNamespace(String namespace) {
+        String versionKey = CACHE_NAMESPACE_KEY + namespace;
+        Long v = stringRedisTemplate.opsForValue().increment(versionKey);
+        namespaceVersions.put(namespace, new NamespaceVersion(v == null ? 0L : v, System.currentTimeMillis()));
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, versionKey);
+        return v == null ? 0L : v;
+    }
+
+    /**
+     * 列表缓存，解决缓存穿透（空列表也会缓存）
+     * @param key
+     * @param type 列表元素类型
+     * @param dbFallback
+     * @param time
+     * @param unit
+     * @param <R>
+     * @return
+     */
+    public <R> List<R> queryListWithPassThrough(String key, Class<R> type, Supplier<List<R>> dbFallback, Long time, TimeUnit unit) {
+        // 命名空间key带有id和版本号，监控只取前两段作为前缀，例如 shop:of
+        List<String> parts = StrUtil.split(key, ':', 3);
+        String prefix = parts.size() < 3 ? key : parts.get(0) + ":" + parts.get(1);
+        String json = getFromRedis(prefix, key);
+        if (json != null) {
+            cacheMetrics.record(prefix, CacheMetrics.HIT);
+            long begin = System.nanoTime();
+            List<R> list = JSONUtil.toList(json, type);
+            cacheMetrics.recordLatency(prefix, CacheMetrics.DESERIALIZE, begin);
+            return list;
+        }
+        cacheMetrics.record(prefix, CacheMetrics.MISS);
+        long begin = System.nanoTime();
+        List<R> list = dbFallback.get();
+        cacheMetrics.recordLatency(prefix, CacheMetrics.DB, begin);
+        this.set(key, list, time, unit);
+        return list;
+    }
+
     /**
      * 具有逻辑过期时间缓存存入，解决缓存击穿问题
      * @param key
@@ -70,6 +192,33 @@ public class CacheClient {
         stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
     }
 
+    /**
+     * 批量写入逻辑过期缓存，使用管道一次性发送，用于缓存预热
+     * @param values key -> 缓存对象
+     * @param time
+     * @param unit
+     */
+    public void setWithLogicalExpireBatch(Map<String, ?> values, Long time, TimeUnit unit) {
+        writeWithLogicalExpireBatch(values, time, unit, Expiration.persistent());
+    }
+
+    private void writeWithLogicalExpireBatch(Map<String, ?> values, Long time, TimeUnit unit, Expiration expiration) {
+        if (values.isEmpty()) {
+            return;
+        }
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            values.forEach((key, value) -> {
+                RedisData redisData = new RedisData();
+                redisData.setData(value);
+                redisData.setExpireTime(expireTime);
+                stringConnection.set(key, JSONUtil.toJsonStr(redisData), expiration, RedisStringCommands.SetOption.upsert());
+            });
+            return null;
+        });
+    }
+
 
     /**
      * 解决缓存穿透问题，因为是工具类，传入值类型不确定，所以使用泛型方法。
@@ -86,21 +235,24 @@ public class CacheClient {
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
         // 1.尝试从redis中查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        String json = getFromRedis(keyPrefix, key);
         // 2.判断是否存在 可能的情况：正确数据/第一次请求redis中没有shopJson为null/查过数据库中没有，在redis中设置为空值，结果shopJson为""
         if (StrUtil.isNotBlank(json)) {//isNotBlank能过滤 1.不为 null 2.不为空字符串："" 3.不为空格、全角空格、制表符、换行符，等不可见字符
             // 3.存在，直接返回
-            return JSONUtil.toBean(json, type);
+            cacheMetrics.record(keyPrefix, CacheMetrics.HIT);
+            return deserialize(keyPrefix, json, type);
         }
 
         // 过滤为空值""情况，防止短时间内再次缓存穿透 注意null 不等于 ""
         if (json != null) {
             // 返回一个错误信息
+            cacheMetrics.record(keyPrefix, CacheMetrics.NULL_HIT);
             return null;
         }
 
         // 4.不存在，根据id查询数据库（使用MybatisPlus）
-        R r = dbFallback.apply(id);
+        cacheMetrics.record(keyPrefix, CacheMetrics.MISS);
+        R r = loadFromDb(keyPrefix, id, dbFallback);
 
         // 5.数据库中不存在，返回错误
         if (r == null) {
@@ -118,7 +270,66 @@ public class CacheClient {
     }
 
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 互斥锁解决缓存击穿问题，未命中时只有拿到锁的线程查数据库，其他线程休眠后重试
+     * @param keyPrefix
+     * @param id
+     * @param type
+     * @param dbFallback
+     * @param time
+     * @param unit
+     * @param <R>
+     * @param <ID>
+     * @return
+     */
+    public <R, ID> R queryWithMutex(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        String lockKey = LOCK_KEY_PREFIX + key;
+        // 自旋
+        while (true) {
+            // 1.尝试从redis中查询缓存
+            String json = getFromRedis(keyPrefix, key);
+            if (StrUtil.isNotBlank(json)) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.HIT);
+                return deserialize(keyPrefix, json, type);
+            }
+            // 命中空值
+            if (json != null) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.NULL_HIT);
+                return null;
+            }
+            // 2.获取互斥锁，失败则休眠重试
+            if (!tryLock(lockKey)) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+                continue;
+            }
+            try {
+                // 3.DoubleCheck，可能别的线程刚重建完释放了锁
+                json = stringRedisTemplate.opsForValue().get(key);
+                if (json != null) {
+                    cacheMetrics.record(keyPrefix, StrUtil.isNotBlank(json) ? CacheMetrics.HIT : CacheMetrics.NULL_HIT);
+                    return StrUtil.isNotBlank(json) ? deserialize(keyPrefix, json, type) : null;
+                }
+                // 4.查询数据库并写入缓存
+                cacheMetrics.record(keyPrefix, CacheMetrics.MISS);
+                R r = loadFromDb(keyPrefix, id, dbFallback);
+                if (r == null) {
+                    stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    return null;
+                }
+                this.set(key, r, time, unit);
+                return r;
+            } finally {
+                unlock(lockKey);
+            }
+        }
+    }
 
     /**
      * 解决缓存击穿问题
@@ -136,6 +347,18 @@ public class CacheClient {
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
 
+        String json = getFromRedis(keyPrefix, key);
+        if (json == null) {
+            // 没有预热到的key，加互斥锁查一次数据库并写入逻辑过期缓存，之后就走逻辑过期流程
+            cacheMetrics.record(keyPrefix, CacheMetrics.MISS);
+            return loadColdKey(keyPrefix, key, id, type, dbFallback, time, unit);
+        }
+        if (StrUtil.isBlank(json)) {
+            // 命中空值
+            cacheMetrics.record(keyPrefix, CacheMetrics.NULL_HIT);
+            return null;
+        }
+
         /*// 1.尝试从redis中查询缓存
         String json = stringRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
@@ -145,29 +368,31 @@ public class CacheClient {
         }
         // 4.命中，需要先把json反序列化为对象
         RedisData redisData = JSONUtil.toBean(json, RedisData.class);*/
-        RedisData redisData = this.getWithLogicalExpire(key);
-        if (redisData == null) {
-            return null;
-        }
+        long begin = System.nanoTime();
+        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
 
         R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        cacheMetrics.recordLatency(keyPrefix, CacheMetrics.DESERIALIZE, begin);
         LocalDateTime expireTime = redisData.getExpireTime();
         // 5.判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
             // 5.1.未过期，直接返回店铺信息
+            cacheMetrics.record(keyPrefix, CacheMetrics.HIT);
             return r;
         }
+        cacheMetrics.record(keyPrefix, CacheMetrics.STALE);
 
         // 5.2.已过期，需要缓存重建
         // 6.重建缓存
         // 6.1.获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
+        String lockKey = LOCK_KEY_PREFIX + key;
         boolean isLock = tryLock(lockKey);
         // 6.2.判断是否成功获取锁
         if (isLock) {
             // DoubleCheck
             redisData = this.getWithLogicalExpire(key);
             if (redisData == null) {
+                unlock(lockKey);
                 return null;
             }
 
@@ -175,24 +400,13 @@ public class CacheClient {
             expireTime = redisData.getExpireTime();
             // 判断是否过期
             if (expireTime.isAfter(LocalDateTime.now())) {
-                //未过期，直接返回店铺信息
+                //未过期，直接返回店铺信息（别的线程刚重建完，锁也要释放）
+                unlock(lockKey);
                 return r;
             }
 
-            // Todo 6.3.获取锁成功，并DoubleCheck过期，则开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> { //lambda表达式形式
-                try {
-                    // 查询数据库
-                    R r1 = dbFallback.apply(id);
-                    // 重建缓存
-                    this.setWithLogicalExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
-                    // 释放锁
-                    unlock(lockKey);
-                }
-            });
+            // 6.3.获取锁成功，并DoubleCheck过期，则交给共享的重建线程池，实现缓存重建
+            submitRebuild(keyPrefix, key, lockKey, id, dbFallback, time, unit);
 
             // 这里还要DoubleCheck
             // 因为你成功获取互斥锁有一种可能时机是刚好有一个线程刚释放完互斥锁，也就证明此时缓存中的数据是新鲜热乎的，
@@ -206,6 +420,265 @@ public class CacheClient {
     }
 
 
+    /**
+     * 批量查询逻辑过期缓存：一次MGET读取全部key，未命中的一次批量查库并用管道写回，已过期的照常提交异步重建并返回旧数据
+     * 用于列表页按id批量填充数据，稳定状态下不查数据库
+     * @param keyPrefix key前缀
+     * @param ids 要查询的id
+     * @param type 缓存对象类型
+     * @param dbBatchFallback 根据一批id查数据库
+     * @param idGetter 从数据库查询结果中取出id
+     * @return 与ids顺序一致的结果，不存在的id跳过
+     */
+    public <R, ID> List<R> multiGetWithLogicalExpire(
+            String keyPrefix, List<ID> ids, Class<R> type,
+            Function<List<ID>, List<R>> dbBatchFallback, Function<R, ID> idGetter, Long time, TimeUnit unit) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.一次MGET
+        List<String> keys = ids.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        long begin = System.nanoTime();
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        cacheMetrics.recordLatency(keyPrefix, CacheMetrics.REDIS, begin);
+        // 单个id重建时复用批量查库的方法
+        Function<ID, R> dbFallback = id -> {
+            List<R> list = dbBatchFallback.apply(Collections.singletonList(id));
+            return list.isEmpty() ? null : list.get(0);
+        };
+        // 2.解析命中的，记录未命中的
+        Map<ID, R> found = new HashMap<>(ids.size());
+        List<ID> misses = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < ids.size(); i++) {
+            ID id = ids.get(i);
+            String json = jsons == null ? null : jsons.get(i);
+            if (json == null) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.MISS);
+                misses.add(id);
+                continue;
+            }
+            if (StrUtil.isBlank(json)) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.NULL_HIT);
+                continue;
+            }
+            begin = System.nanoTime();
+            RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+            R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+            cacheMetrics.recordLatency(keyPrefix, CacheMetrics.DESERIALIZE, begin);
+            found.put(id, r);
+            if (redisData.getExpireTime().isAfter(now)) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.HIT);
+                continue;
+            }
+            // 已过期，抢到锁的提交异步重建，本次返回旧数据
+            cacheMetrics.record(keyPrefix, CacheMetrics.STALE);
+            String key = keyPrefix + id;
+            String lockKey = LOCK_KEY_PREFIX + key;
+            if (tryLock(lockKey)) {
+                submitRebuild(keyPrefix, key, lockKey, id, dbFallback, time, unit);
+            }
+        }
+        // 3.未命中的一次批量查库，管道写回；数据库中也没有的写入空值
+        if (!misses.isEmpty()) {
+            begin = System.nanoTime();
+            List<R> loaded = dbBatchFallback.apply(misses);
+            cacheMetrics.recordLatency(keyPrefix, CacheMetrics.DB, begin);
+            Map<String, R> values = new HashMap<>(loaded.size());
+            for (R r : loaded) {
+                found.put(idGetter.apply(r), r);
+                values.put(keyPrefix + idGetter.apply(r), r);
+            }
+            // 和单个查询一样，按需加载的key带物理TTL
+            writeWithLogicalExpireBatch(values, time, unit,
+                    Expiration.seconds(unit.toSeconds(time) * COLD_KEY_TTL_FACTOR));
+            List<String> nullKeys = misses.stream()
+                    .filter(id -> !found.containsKey(id))
+                    .map(id -> keyPrefix + id)
+                    .collect(Collectors.toList());
+            setNullBatch(nullKeys);
+        }
+        // 4.按ids的顺序返回
+        List<R> result = new ArrayList<>(found.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量查询缓存（缓存穿透方案的格式，与queryWithPassThrough共用key）：一次MGET，未命中的一次批量查库并用管道写回
+     * @param keyPrefix key前缀
+     * @param ids 要查询的id
+     * @param type 缓存对象类型
+     * @param dbBatchFallback 根据一批id查数据库
+     * @param idGetter 从数据库查询结果中取出id
+     * @return 与ids顺序一致的结果，不存在的id跳过
+     */
+    public <R, ID> List<R> multiGetWithPassThrough(
+            String keyPrefix, List<ID> ids, Class<R> type,
+            Function<List<ID>, List<R>> dbBatchFallback, Function<R, ID> idGetter, Long time, TimeUnit unit) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.一次MGET
+        List<String> keys = ids.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        long begin = System.nanoTime();
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        cacheMetrics.recordLatency(keyPrefix, CacheMetrics.REDIS, begin);
+        // 2.解析命中的，记录未命中的
+        Map<ID, R> found = new HashMap<>(ids.size());
+        List<ID> misses = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            if (json == null) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.MISS);
+                misses.add(ids.get(i));
+            } else if (StrUtil.isBlank(json)) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.NULL_HIT);
+            } else {
+                cacheMetrics.record(keyPrefix, CacheMetrics.HIT);
+                found.put(ids.get(i), deserialize(keyPrefix, json, type));
+            }
+        }
+        // 3.未命中的一次批量查库，管道写回；数据库中也没有的写入空值
+        if (!misses.isEmpty()) {
+            begin = System.nanoTime();
+            List<R> loaded = dbBatchFallback.apply(misses);
+            cacheMetrics.recordLatency(keyPrefix, CacheMetrics.DB, begin);
+            long seconds = unit.toSeconds(time);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (R r : loaded) {
+                    stringConnection.setEx(keyPrefix + idGetter.apply(r), seconds, JSONUtil.toJsonStr(r));
+                }
+                return null;
+            });
+            for (R r : loaded) {
+                found.put(idGetter.apply(r), r);
+            }
+            setNullBatch(misses.stream()
+                    .filter(id -> !found.containsKey(id))
+                    .map(id -> keyPrefix + id)
+                    .collect(Collectors.toList()));
+        }
+        // 4.按ids的顺序返回
+        List<R> result = new ArrayList<>(found.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 管道批量写入空值，防止缓存穿透
+     */
+    private void setNullBatch(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            keys.forEach(key -> stringConnection.setEx(key, TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), ""));
+            return null;
+        });
+    }
+
+    /**
+     * 逻辑过期缓存中还没有的key：只有拿到互斥锁的线程查数据库，其它线程等一会再读缓存，等不到返回null
+     * 按需加载的key不一定是热点，除逻辑过期外再设置物理TTL（逻辑过期时间的COLD_KEY_TTL_FACTOR倍），长期没人访问会自动删除
+     */
+    private <R, ID> R loadColdKey(
+            String keyPrefix, String key, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String lockKey = LOCK_KEY_PREFIX + key;
+        for (int i = 0; i < COLD_KEY_RETRY; i++) {
+            if (tryLock(lockKey)) {
+                try {
+                    // DoubleCheck，可能别的线程刚加载完释放了锁
+                    String json = stringRedisTemplate.opsForValue().get(key);
+                    if (json != null) {
+                        return StrUtil.isBlank(json) ? null : logicalData(json, type);
+                    }
+                    R r = loadFromDb(keyPrefix, id, dbFallback);
+                    if (r == null) {
+                        // 数据库中也不存在，写入空值防止缓存穿透
+                        stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                        return null;
+                    }
+                    writeWithLogicalExpire(key, r, time, unit,
+                            Expiration.seconds(unit.toSeconds(time) * COLD_KEY_TTL_FACTOR));
+                    return r;
+                } finally {
+                    unlock(lockKey);
+                }
+            }
+            // 没拿到锁，稍等再读缓存
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (json != null) {
+                return StrUtil.isBlank(json) ? null : logicalData(json, type);
+            }
+        }
+        return null;
+    }
+
+    private static <R> R logicalData(String json, Class<R> type) {
+        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), type);
+    }
+
+    /**
+     * 写入逻辑过期缓存，并按expiration设置物理过期时间
+     */
+    private void writeWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, Expiration expiration) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        String json = JSONUtil.toJsonStr(redisData);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                ((StringRedisConnection) connection).set(key, json, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    /**
+     * 已获取互斥锁后，把重建任务交给共享的重建线程池，任务结束后释放锁
+     */
+    private <R, ID> void submitRebuild(
+            String keyPrefix, String key, String lockKey, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        boolean submitted = cacheRebuildExecutor.submit(key, () -> { //lambda表达式形式
+            try {
+                // 查询数据库
+                R r1 = loadFromDb(keyPrefix, id, dbFallback);
+                if (r1 == null) {
+                    // 数据已被删除，改为写入空值
+                    stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    return;
+                }
+                // 重建缓存，保留原来的物理TTL：预热的key没有TTL，按需加载的key仍按加载时的TTL过期
+                writeWithLogicalExpire(key, r1, time, unit, Expiration.keepTtl());
+            } finally {
+                // 释放锁
+                unlock(lockKey);
+            }
+        });
+        if (submitted) {
+            cacheMetrics.recordRebuild(keyPrefix);
+        } else {
+            // 被去重或队列已满，任务不会执行，锁要在这里释放，本次直接返回旧数据
+            unlock(lockKey);
+        }
+    }
+
     // 获取逻辑缓存对象
     public RedisData getWithLogicalExpire(String key){
         // 1.尝试从redis中查询缓存
@@ -236,6 +709,37 @@ public class CacheClient {
         stringRedisTemplate.delete(key);
     }
 
+    private String getFromRedis(String keyPrefix, String key) {
+        long begin = System.nanoTime();
+        String json = stringRedisTemplate.opsForValue().get(key);
+        cacheMetrics.recordLatency(keyPrefix, CacheMetrics.REDIS, begin);
+        return json;
+    }
+
+    private <R> R deserialize(String keyPrefix, String json, Class<R> type) {
+        long begin = System.nanoTime();
+        R r = JSONUtil.toBean(json, type);
+        cacheMetrics.recordLatency(keyPrefix, CacheMetrics.DESERIALIZE, begin);
+        return r;
+    }
+
+    private <R, ID> R loadFromDb(String keyPrefix, ID id, Function<ID, R> dbFallback) {
+        long begin = System.nanoTime();
+        R r = dbFallback.apply(id);
+        cacheMetrics.recordLatency(keyPrefix, CacheMetrics.DB, begin);
+        return r;
+    }
+
+    private static class NamespaceVersion {
+        private final long version;
+        private final long loadTime;
+
+        private NamespaceVersion(long version, long loadTime) {
+            this.version = version;
+            this.loadTime = loadTime;
+        }
+    }
+
 
 
 }
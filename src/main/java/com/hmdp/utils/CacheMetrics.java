@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 缓存监控指标，按key前缀（prefix标签）统计，通过 /actuator/prometheus 暴露
+ * cache.requests{result=hit|stale|miss|null_hit}：命中 / 逻辑过期后返回旧值 / 未命中查库 / 命中空值
+ * cache.rebuilds：提交的异步重建次数
+ * cache.latency{stage=redis|db|deserialize}：各阶段耗时直方图
+ * Micrometer的Counter底层是DoubleAdder，无锁；Meter按前缀缓存在Map里，不用每次都去注册中心查找，线上可以常开
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String HIT = "hit";
+    public static final String STALE = "stale";
+    public static final String MISS = "miss";
+    public static final String NULL_HIT = "null_hit";
+
+    public static final String REDIS = "redis";
+    public static final String DB = "db";
+    public static final String DESERIALIZE = "deserialize";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    // prefix + ":" + result -> Counter
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    // prefix + ":" + stage -> Timer
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * 重建线程池的指标
+     */
+    @PostConstruct
+    private void bindRebuildExecutor() {
+        Gauge.builder("cache.rebuild.queue.size", cacheRebuildExecutor, CacheRebuildExecutor::getQueueSize)
+                .description("排队中的缓存重建任务数").register(meterRegistry);
+        Gauge.builder("cache.rebuild.active", cacheRebuildExecutor, CacheRebuildExecutor::getActiveCount)
+                .description("正在执行的缓存重建任务数").register(meterRegistry);
+        Gauge.builder("cache.rebuild.latency.avg", cacheRebuildExecutor, CacheRebuildExecutor::getAvgRebuildMillis)
+                .baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("cache.rebuild.latency.max", cacheRebuildExecutor, CacheRebuildExecutor::getMaxRebuildMillis)
+                .baseUnit("milliseconds").register(meterRegistry);
+        rebuildTaskCounter("submitted", CacheRebuildExecutor::getSubmittedCount);
+        rebuildTaskCounter("deduplicated", CacheRebuildExecutor::getDeduplicatedCount);
+        rebuildTaskCounter("rejected", CacheRebuildExecutor::getRejectedCount);
+        rebuildTaskCounter("succeeded", CacheRebuildExecutor::getSucceededCount);
+        rebuildTaskCounter("failed", CacheRebuildExecutor::getFailedCount);
+    }
+
+    private void rebuildTaskCounter(String outcome, ToDoubleFunction<CacheRebuildExecutor> f) {
+        FunctionCounter.builder("cache.rebuild.tasks", cacheRebuildExecutor, f)
+                .tag("outcome", outcome).register(meterRegistry);
+    }
+
+    public void record(String prefix, String result) {
+        counters.computeIfAbsent(prefix + ":" + result, k -> Counter.builder("cache.requests")
+                .tag("prefix", prefix)
+                .tag("result", result)
+                .register(meterRegistry)).increment();
+    }
+
+    public void recordRebuild(String prefix) {
+        counters.computeIfAbsent(prefix + ":rebuild", k -> Counter.builder("cache.rebuilds")
+                .tag("prefix", prefix)
+                .register(meterRegistry)).increment();
+    }
+
+    /**
+     * 记录某个阶段的耗时
+     * @param beginNanos System.nanoTime()的开始时间
+     */
+    public void recordLatency(String prefix, String stage, long beginNanos) {
+        timers.computeIfAbsent(prefix + ":" + stage, k -> Timer.builder("cache.latency")
+                .tag("prefix", prefix)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(System.nanoTime() - beginNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,198 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_DOUBLE_DELETE_DELAY;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGE_CHANNEL;
+
+/**
+ * 发件箱中继：读取tb_cache_outbox中的事件，批量执行后删除记录
+ * 1.事务提交后立即异步触发一次，正常情况下延迟很低
+ * 2.定时任务兜底，事务提交后服务宕机、Redis暂时不可用等情况下事件不会丢，恢复后继续处理
+ * 3.删除缓存的事件：批量DEL -> 延迟双删 -> 发布到 cache:invalidate 频道通知各节点的本地缓存
+ * 4.命名空间事件：升级版本号，整个命名空间下的缓存一次性失效
+ * 5.店铺变化事件：同步Redis中的 shop:geo:{typeId}，再发布到 shop:change 频道，各节点刷新内存中的地理位置索引
+ * 多个节点同时处理同一批事件也没关系，删除缓存本身是幂等的
+ */
+@Slf4j
+@Component
+public class CacheOutboxRelay {
+
+    private static final int BATCH_SIZE = 100;
+    // 超过最大失败次数的事件不再自动重试，留在表里人工排查
+    private static final int MAX_RETRY = 10;
+
+    @Resource
+    private CacheOutboxMapper cacheOutboxMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopGeoRedisIndex shopGeoRedisIndex;
+
+    private final ExecutorService relayExecutor = Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder.create().setNamePrefix("cache-outbox-relay-").build());
+
+    private final ScheduledExecutorService doubleDeleteExecutor = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder.create().setNamePrefix("cache-double-delete-").build());
+
+    // 已经有一次触发在排队了，就不用再提交
+    private final AtomicBoolean triggered = new AtomicBoolean(false);
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // 执行期间又有触发时置为true，执行完立即再处理一轮，不用等下一次定时任务
+    private final AtomicBoolean rerun = new AtomicBoolean(false);
+
+    /**
+     * 当前有事务则在提交后触发，没有事务则直接触发
+     */
+    public void triggerAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            trigger();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                trigger();
+            }
+        });
+    }
+
+    public void trigger() {
+        if (triggered.compareAndSet(false, true)) {
+            relayExecutor.execute(() -> {
+                triggered.set(false);
+                relay();
+            });
+        }
+    }
+
+    /**
+     * 定时兜底
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void scheduledRelay() {
+        relay();
+    }
+
+    /**
+     * 正在执行时不直接丢弃，而是标记rerun由正在执行的线程再处理一轮；
+     * 先标记再抢running，执行的线程先释放running再检查标记，两边的顺序保证标记不会被漏掉
+     */
+    private void relay() {
+        rerun.set(true);
+        while (rerun.get() && running.compareAndSet(false, true)) {
+            try {
+                rerun.set(false);
+                relayOnce();
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    private void relayOnce() {
+        try {
+            while (true) {
+                List<CacheOutbox> events = cacheOutboxMapper.selectList(new QueryWrapper<CacheOutbox>()
+                        .lt("retry_count", MAX_RETRY)
+                        .orderByAsc("id")
+                        .last("LIMIT " + BATCH_SIZE));
+                // 有失败的批次就先停下，等下一次定时任务再重试，避免空转
+                if (!dispatch(events) || events.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("处理缓存发件箱异常", e);
+        }
+    }
+
+    /**
+     * 按事件类型分组批量处理
+     * @return 是否全部处理成功
+     */
+    private boolean dispatch(List<CacheOutbox> events) {
+        boolean allSuccess = true;
+        Map<String, List<CacheOutbox>> groups = events.stream().collect(Collectors.groupingBy(CacheOutbox::getEventType));
+        for (Map.Entry<String, List<CacheOutbox>> group : groups.entrySet()) {
+            List<Long> ids = group.getValue().stream().map(CacheOutbox::getId).collect(Collectors.toList());
+            List<String> payloads = group.getValue().stream().map(CacheOutbox::getPayload).distinct().collect(Collectors.toList());
+            try {
+                handle(group.getKey(), payloads);
+                cacheOutboxMapper.deleteBatchIds(ids);
+            } catch (Exception e) {
+                allSuccess = false;
+                log.error("缓存事件处理失败, type: {}, ids: {}", group.getKey(), ids, e);
+                cacheOutboxMapper.update(null, new UpdateWrapper<CacheOutbox>()
+                        .setSql("retry_count = retry_count + 1")
+                        .in("id", ids));
+            }
+        }
+        return allSuccess;
+    }
+
+    private void handle(String eventType, List<String> payloads) {
+        switch (eventType) {
+            case CacheOutbox.INVALIDATE:
+                invalidate(payloads);
+                break;
+            case CacheOutbox.BUMP_NAMESPACE:
+                payloads.forEach(cacheClient::bumpNamespace);
+                break;
+            case CacheOutbox.SHOP_CHANGED:
+                shopGeoRedisIndex.sync(payloads.stream().map(Long::valueOf).collect(Collectors.toList()));
+                stringRedisTemplate.convertAndSend(SHOP_CHANGE_CHANNEL, String.join(",", payloads));
+                break;
+            default:
+                throw new IllegalStateException("未知的缓存事件类型: " + eventType);
+        }
+    }
+
+    private void invalidate(List<String> keys) {
+        // 1.删除缓存
+        stringRedisTemplate.delete(keys);
+        // 2.延迟双删：删除后、数据库主从同步完成前，可能有读请求把旧数据又写回了缓存
+        doubleDeleteExecutor.schedule(() -> {
+            try {
+                stringRedisTemplate.delete(keys);
+            } catch (Exception e) {
+                log.error("延迟双删失败, keys: {}", keys, e);
+            }
+        }, CACHE_DOUBLE_DELETE_DELAY, TimeUnit.MILLISECONDS);
+        // 3.通知各节点的本地缓存
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, String.join(",", keys));
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        relayExecutor.shutdown();
+        doubleDeleteExecutor.shutdown();
+    }
+}
@@ -0,0 +1,140 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全局共享的缓存重建线程池
+ * 1.有界队列：大量key同时逻辑过期时，排队的重建任务有上限，不会无限堆积
+ * 2.按key去重：同一个key已经在排队或者正在重建时，不再重复提交
+ * 3.拒绝策略：队列满了直接放弃本次重建，调用方继续返回旧数据（逻辑过期本来就允许短暂返回旧值）
+ * 4.统计：队列深度、提交/去重/拒绝/成功/失败次数、重建耗时
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private static final int CORE_POOL_SIZE = 4;
+    private static final int MAX_POOL_SIZE = 10;
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            CORE_POOL_SIZE, MAX_POOL_SIZE,
+            60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            ThreadFactoryBuilder.create().setNamePrefix("cache-rebuild-").build(),
+            // 队列满时抛出RejectedExecutionException，由submit()捕获后让调用方返回旧数据
+            new ThreadPoolExecutor.AbortPolicy());
+
+    // 正在排队或重建中的key
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalRebuildNanos = new LongAdder();
+    private final AtomicLong maxRebuildNanos = new AtomicLong();
+
+    /**
+     * 提交一个缓存重建任务
+     * @param key 缓存key，用于去重
+     * @param rebuild 重建逻辑
+     * @return true代表任务已进入线程池；false代表被去重或被拒绝，调用方应直接返回旧数据并自行释放已获取的资源（如互斥锁）
+     */
+    public boolean submit(String key, Runnable rebuild) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                long begin = System.nanoTime();
+                try {
+                    rebuild.run();
+                    succeeded.increment();
+                } catch (Exception e) {
+                    // 以前是throw new RuntimeException(e)，线程池里抛出的异常没人接收，直接丢了
+                    failed.increment();
+                    log.error("缓存重建失败, key: {}", key, e);
+                } finally {
+                    long cost = System.nanoTime() - begin;
+                    totalRebuildNanos.add(cost);
+                    maxRebuildNanos.accumulateAndGet(cost, Math::max);
+                    pendingKeys.remove(key);
+                }
+            });
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            rejected.increment();
+            log.warn("缓存重建队列已满，本次返回旧数据, key: {}", key);
+            return false;
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getPendingKeyCount() {
+        return pendingKeys.size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getSucceededCount() {
+        return succeeded.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * 平均重建耗时（毫秒）
+     */
+    public double getAvgRebuildMillis() {
+        long finished = succeeded.sum() + failed.sum();
+        return finished == 0 ? 0 : totalRebuildNanos.sum() / 1_000_000.0 / finished;
+    }
+
+    /**
+     * 最大重建耗时（毫秒）
+     */
+    public double getMaxRebuildMillis() {
+        return maxRebuildNanos.get() / 1_000_000.0;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdown();
+    }
+}
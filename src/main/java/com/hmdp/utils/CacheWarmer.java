@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * 缓存预热
+ * 应用启动时（也可以通过管理端口的 /actuator/cacheWarmUp 手动触发）把热点店铺以逻辑过期的形式写入Redis，
+ * 避免新节点上线或Redis被清空后，第一波流量全部打到MySQL上
+ * 热点店铺来源：配置的id列表，没配置则取销量、评分最高的前N个店铺
+ */
+@Slf4j
+@Component
+public class CacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Value("${hmdp.cache.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.cache.warm-up.shop-ids:}")
+    private List<Long> hotShopIds;
+
+    @Value("${hmdp.cache.warm-up.top-n:100}")
+    private int topN;
+
+    @Value("${hmdp.cache.warm-up.batch-size:50}")
+    private int batchSize;
+
+    @Value("${hmdp.cache.warm-up.parallelism:4}")
+    private int parallelism;
+
+    // 防止启动预热和手动预热同时进行，预热中再次触发直接返回
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // 所有预热共用一个线程池，而不是每次预热新建一个
+    private ExecutorService pool;
+
+    @PostConstruct
+    private void init() {
+        pool = Executors.newFixedThreadPool(Math.max(parallelism, 1),
+                ThreadFactoryBuilder.create().setNamePrefix("cache-warm-up-").build());
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            warmUp();
+        } catch (Exception e) {
+            // 预热失败不影响应用启动，缓存会在访问时按需加载
+            log.error("缓存预热失败", e);
+        }
+    }
+
+    /**
+     * 执行一次预热
+     * @return 写入缓存的店铺数量，正在预热中则返回-1
+     */
+    public int warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("缓存预热正在进行中，忽略本次请求");
+            return -1;
+        }
+        try {
+            // 1.店铺类型列表
+            shopTypeService.queryTypeList();
+            // 2.热点店铺
+            return warmUpShops();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int warmUpShops() {
+        long begin = System.currentTimeMillis();
+        // 1.确定要预热的店铺id
+        List<Long> ids = CollUtil.isNotEmpty(hotShopIds) ? hotShopIds : queryTopShopIds();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        // 2.分批，每批一次 IN 查询 + 一次管道写入
+        List<List<Long>> batches = CollUtil.split(ids, batchSize);
+        int total = ids.size();
+        AtomicInteger loaded = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batches.size());
+        for (List<Long> batch : batches) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                List<Shop> shops = shopService.listByIds(batch);
+                Map<String, Shop> values = new HashMap<>(shops.size());
+                for (Shop shop : shops) {
+                    values.put(CACHE_HOT_KEY + shop.getId(), shop);
+                }
+                cacheClient.setWithLogicalExpireBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                // 3.汇报进度
+                log.info("缓存预热进度：{}/{}", loaded.addAndGet(shops.size()), total);
+            }, pool));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        log.info("缓存预热完成，共{}个店铺，耗时{}ms", loaded.get(), System.currentTimeMillis() - begin);
+        return loaded.get();
+    }
+
+    /**
+     * 按销量、评分倒序取前N个店铺的id
+     */
+    private List<Long> queryTopShopIds() {
+        return shopService.query()
+                .select("id")
+                .orderByDesc("sold", "score")
+                .last("LIMIT " + topN)
+                .list()
+                .stream()
+                .map(Shop::getId)
+                .collect(Collectors.toList());
+    }
+}
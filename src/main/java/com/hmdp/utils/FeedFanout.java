@@ -0,0 +1,234 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.FollowMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.FEED_BIG_AUTHOR_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_FANOUT_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_FANOUT_PENDING_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_FANOUT_TTL;
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_KEY_PREFIX;
+
+/**
+ * 发布博客后异步推送到粉丝收件箱 feed:{fansId}
+ * 以前在发布请求里查出全部粉丝、每个粉丝一次ZADD，粉丝10万的用户发布一篇博客要好几分钟
+ * 1.发布时只写入任务进度 feed:fanout:{blogId}（Hash）并加入pending集合，请求立即返回
+ * 2.后台线程按tb_follow的id分页读取粉丝，每页一次管道ZADD，写完一页就把游标和已推送数写回进度
+ * 3.ZADD的member和score都是固定的，重复推送结果也一样；宕机后锁过期，定时任务从pending中找到没完成的任务，从游标处继续
+ * 4.粉丝数达到阈值的大V不推送，只写自己的发件箱 feed:outbox:{authorId}，粉丝读取时把关注的大V的发件箱和自己的收件箱合并（推拉结合）
+ * 5.只推送给活跃用户，收件箱和发件箱都只保留最新的若干条，见FeedInbox
+ */
+@Slf4j
+@Component
+public class FeedFanout {
+
+    private static final int PAGE_SIZE = 1000;
+    // 推送锁的有效期，每推完一页续期一次，秒
+    private static final long LOCK_TTL = 60L;
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private FollowMapper followMapper;
+
+    @Resource
+    private FeedInbox feedInbox;
+
+    @Value("${hmdp.feed.big-author-threshold:5000}")
+    private int bigAuthorThreshold;
+
+    private final ExecutorService fanoutExecutor = Executors.newFixedThreadPool(2,
+            ThreadFactoryBuilder.create().setNamePrefix("feed-fanout-").build());
+
+    /**
+     * 发布博客：大V写入自己的发件箱，其他作者推送给粉丝
+     * @param blog 需要id、userId和createTime，score用发布时间，与重建收件箱时一致
+     */
+    public void publish(Blog blog) {
+        long timestamp = FeedInbox.score(blog);
+        Long authorId = blog.getUserId();
+        if (!isBigAuthor(authorId)) {
+            submit(blog, timestamp);
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.sAdd(FEED_BIG_AUTHOR_KEY, authorId.toString());
+            conn.zAdd(FEED_OUTBOX_KEY + authorId, timestamp, blog.getId().toString());
+            conn.zRemRange(FEED_OUTBOX_KEY + authorId, 0, -feedInbox.getInboxSize() - 1);
+            return null;
+        });
+    }
+
+    /**
+     * 查询用户关注的大V
+     */
+    public Set<String> bigAuthorsFollowedBy(Long userId) {
+        Set<String> ids = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_BIG_AUTHOR_KEY);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    /**
+     * 已经是大V的不再统计粉丝数；成为大V后即使粉丝数回落也继续写发件箱，避免每次发布都COUNT
+     */
+    private boolean isBigAuthor(Long authorId) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FEED_BIG_AUTHOR_KEY, authorId.toString()))) {
+            return true;
+        }
+        Integer fans = followMapper.selectCount(new QueryWrapper<Follow>().eq("follow_user_id", authorId));
+        return fans != null && fans >= bigAuthorThreshold;
+    }
+
+    /**
+     * 登记推送任务并提交到后台线程
+     */
+    private void submit(Blog blog, long timestamp) {
+        String key = FEED_FANOUT_KEY + blog.getId();
+        Map<String, String> progress = new HashMap<>();
+        progress.put("blogId", blog.getId().toString());
+        progress.put("authorId", blog.getUserId().toString());
+        progress.put("timestamp", String.valueOf(timestamp));
+        progress.put("cursor", "0");
+        progress.put("pushed", "0");
+        progress.put("status", STATUS_RUNNING);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMSet(key, progress);
+            conn.sAdd(FEED_FANOUT_PENDING_KEY, blog.getId().toString());
+            return null;
+        });
+        execute(blog.getId());
+    }
+
+    /**
+     * 查询推送进度
+     * @return 进度，不存在时为空Map
+     */
+    public Map<Object, Object> progress(Long blogId) {
+        return stringRedisTemplate.opsForHash().entries(FEED_FANOUT_KEY + blogId);
+    }
+
+    /**
+     * 继续没完成的任务，正在其它线程或节点执行的会因为拿不到锁跳过
+     */
+    @Scheduled(fixedDelay = 30 * 1000)
+    public void resume() {
+        Set<String> pending = stringRedisTemplate.opsForSet().members(FEED_FANOUT_PENDING_KEY);
+        if (CollUtil.isEmpty(pending)) {
+            return;
+        }
+        pending.forEach(id -> execute(Long.valueOf(id)));
+    }
+
+    private void execute(Long blogId) {
+        try {
+            fanoutExecutor.execute(() -> fanout(blogId));
+        } catch (RejectedExecutionException e) {
+            // 停机中，留在pending里，重启后继续
+            log.warn("推送任务提交失败，blogId={}", blogId);
+        }
+    }
+
+    private void fanout(Long blogId) {
+        SimpleRedisLock lock = new SimpleRedisLock(FEED_FANOUT_KEY + blogId, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_TTL)) {
+            return;
+        }
+        String key = FEED_FANOUT_KEY + blogId;
+        try {
+            // 1.读取进度，从游标处继续
+            Map<Object, Object> progress = stringRedisTemplate.opsForHash().entries(key);
+            if (progress.isEmpty() || STATUS_DONE.equals(progress.get("status"))) {
+                stringRedisTemplate.opsForSet().remove(FEED_FANOUT_PENDING_KEY, blogId.toString());
+                return;
+            }
+            Long authorId = Long.valueOf((String) progress.get("authorId"));
+            double timestamp = Double.parseDouble((String) progress.get("timestamp"));
+            long cursor = Long.parseLong((String) progress.get("cursor"));
+            long pushed = Long.parseLong((String) progress.get("pushed"));
+            long begin = System.currentTimeMillis();
+            while (true) {
+                // 2.按id分页读取粉丝 select id, user_id from tb_follow where follow_user_id = ? and id > ? order by id limit ?
+                List<Follow> follows = followMapper.selectList(new QueryWrapper<Follow>()
+                        .select("id", "user_id")
+                        .eq("follow_user_id", authorId)
+                        .gt("id", cursor)
+                        .orderByAsc("id")
+                        .last("LIMIT " + PAGE_SIZE));
+                if (follows.isEmpty()) {
+                    break;
+                }
+                // 3.一页一次管道推送，只推送给活跃用户，推送后裁剪到定长
+                List<Long> fansIds = feedInbox.filterActive(
+                        follows.stream().map(Follow::getUserId).collect(Collectors.toList()));
+                int inboxSize = feedInbox.getInboxSize();
+                if (!fansIds.isEmpty()) {
+                    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection conn = (StringRedisConnection) connection;
+                        for (Long fansId : fansIds) {
+                            conn.zAdd(FEED_KEY + fansId, timestamp, blogId.toString());
+                            conn.zRemRange(FEED_KEY + fansId, 0, -inboxSize - 1);
+                        }
+                        return null;
+                    });
+                }
+                // 4.记录进度、续期锁
+                cursor = follows.get(follows.size() - 1).getId();
+                pushed += follows.size();
+                Map<String, String> update = new HashMap<>();
+                update.put("cursor", String.valueOf(cursor));
+                update.put("pushed", String.valueOf(pushed));
+                stringRedisTemplate.opsForHash().putAll(key, update);
+                stringRedisTemplate.expire(LOCK_KEY_PREFIX + key, LOCK_TTL, TimeUnit.SECONDS);
+                if (follows.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            // 5.完成，进度保留一段时间供查询
+            stringRedisTemplate.opsForHash().put(key, "status", STATUS_DONE);
+            stringRedisTemplate.expire(key, FEED_FANOUT_TTL, TimeUnit.HOURS);
+            stringRedisTemplate.opsForSet().remove(FEED_FANOUT_PENDING_KEY, blogId.toString());
+            log.info("博客{}推送完成，共{}个粉丝，耗时{}ms", blogId, pushed, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("博客{}推送失败，稍后从断点继续", blogId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        fanoutExecutor.shutdown();
+    }
+}
@@ -0,0 +1,224 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.NumberUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.FEED_ACTIVE_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_ACTIVE_SEEDED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_BIG_AUTHOR_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_KEY_PREFIX;
+
+/**
+ * 控制收件箱 feed:{userId} 占用的内存，只为活跃用户保留收件箱
+ * 1.定长：推送时只保留最新的inboxSize条
+ * 2.活跃用户：feed:active（ZSet，score为最后一次读取收件箱的时间），推送时跳过不在其中的用户
+ * 3.淘汰：每小时删除超过inactiveDays天没读过的用户的收件箱，多个节点只有一个执行；
+ *   第一次执行时扫描一遍 feed:*，把feed:active上线前就存在的收件箱补进来，否则它们永远不会被淘汰
+ * 4.重建：不在feed:active中的用户读取收件箱时，从关注的作者（大V除外，大V是读取时合并的）最近的博客重建
+ * 5.score：推送、重建都用博客的发布时间，见score(Blog)
+ */
+@Slf4j
+@Component
+public class FeedInbox {
+
+    private static final int EVICT_BATCH_SIZE = 1000;
+    private static final String EVICT_LOCK_KEY = LOCK_KEY_PREFIX + FEED_ACTIVE_KEY;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Value("${hmdp.feed.inbox-size:500}")
+    private int inboxSize;
+
+    @Value("${hmdp.feed.inactive-days:30}")
+    private int inactiveDays;
+
+    public int getInboxSize() {
+        return inboxSize;
+    }
+
+    /**
+     * 收件箱、发件箱中博客的score：发布时间（毫秒）
+     * 推送和重建用同一个时间，重建出的收件箱与推送进来的顺序、分页游标都一致
+     */
+    public static long score(Blog blog) {
+        return blog.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 读取收件箱前调用：刷新活跃时间，之前不活跃（收件箱可能已被淘汰）则先重建
+     */
+    public void touch(Long userId) {
+        Boolean added = stringRedisTemplate.opsForZSet().add(FEED_ACTIVE_KEY, userId.toString(), System.currentTimeMillis());
+        if (Boolean.TRUE.equals(added)) {
+            rebuild(userId);
+        }
+    }
+
+    /**
+     * 过滤出活跃用户，管道一次查完
+     */
+    public List<Long> filterActive(List<Long> userIds) {
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long userId : userIds) {
+                conn.zScore(FEED_ACTIVE_KEY, userId.toString());
+            }
+            return null;
+        });
+        List<Long> active = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            if (scores.get(i) != null) {
+                active.add(userIds.get(i));
+            }
+        }
+        return active;
+    }
+
+    /**
+     * 从关注的作者最近的博客重建收件箱，score用博客的发布时间
+     */
+    public void rebuild(Long userId) {
+        // 1.关注的作者，去掉大V
+        Set<String> authors = stringRedisTemplate.opsForSet().difference(FOLLOWS_KEY + userId, FEED_BIG_AUTHOR_KEY);
+        if (CollUtil.isEmpty(authors)) {
+            return;
+        }
+        // 2.查询这些作者最近的inboxSize篇博客
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "create_time")
+                .in("user_id", authors.stream().map(Long::valueOf).collect(Collectors.toList()))
+                .orderByDesc("id")
+                .last("LIMIT " + inboxSize));
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 3.写入收件箱，和期间推送进来的合并后再裁剪
+        String key = FEED_KEY + userId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.zAdd(key, score(blog), blog.getId().toString());
+            }
+            conn.zRemRange(key, 0, -inboxSize - 1);
+            return null;
+        });
+        log.debug("重建用户{}的收件箱，共{}篇博客", userId, blogs.size());
+    }
+
+    /**
+     * 淘汰不活跃用户的收件箱
+     */
+    @Scheduled(fixedDelay = 60 * 60 * 1000)
+    public void evictInactive() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(EVICT_LOCK_KEY, "1", 30, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            // 0.只需要做一次
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(FEED_ACTIVE_SEEDED_KEY))) {
+                seedActive();
+                stringRedisTemplate.opsForValue().set(FEED_ACTIVE_SEEDED_KEY, "1");
+            }
+            long deadline = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(inactiveDays);
+            int total = 0;
+            while (true) {
+                // 1.按最后活跃时间从早到晚分批取出
+                Set<String> userIds = stringRedisTemplate.opsForZSet()
+                        .rangeByScore(FEED_ACTIVE_KEY, 0, deadline, 0, EVICT_BATCH_SIZE);
+                if (CollUtil.isEmpty(userIds)) {
+                    break;
+                }
+                // 2.先移出活跃用户，不再推送，再删除收件箱
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    conn.zRem(FEED_ACTIVE_KEY, userIds.toArray(new String[0]));
+                    conn.del(userIds.stream().map(id -> FEED_KEY + id).toArray(String[]::new));
+                    return null;
+                });
+                total += userIds.size();
+                if (userIds.size() < EVICT_BATCH_SIZE) {
+                    break;
+                }
+            }
+            if (total > 0) {
+                log.info("淘汰{}个不活跃用户的收件箱", total);
+            }
+        } catch (Exception e) {
+            log.error("淘汰不活跃用户的收件箱失败", e);
+        } finally {
+            stringRedisTemplate.delete(EVICT_LOCK_KEY);
+        }
+    }
+
+    /**
+     * 扫描 feed:*，把不在feed:active中的收件箱加入feed:active，活跃时间记为现在，之后照常淘汰
+     */
+    private void seedActive() {
+        long now = System.currentTimeMillis();
+        int total = 0;
+        List<String> userIds = new ArrayList<>(EVICT_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().match(FEED_KEY + "*").count(EVICT_BATCH_SIZE).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                // 只要收件箱 feed:{userId}，跳过 feed:outbox:、feed:fanout: 等
+                String userId = cursor.next().substring(FEED_KEY.length());
+                if (!NumberUtil.isLong(userId)) {
+                    continue;
+                }
+                userIds.add(userId);
+                if (userIds.size() == EVICT_BATCH_SIZE) {
+                    addActive(userIds, now);
+                    total += userIds.size();
+                    userIds.clear();
+                }
+            }
+        }
+        addActive(userIds, now);
+        total += userIds.size();
+        log.info("扫描到{}个收件箱，已补进feed:active", total);
+    }
+
+    /**
+     * 已经在feed:active中的不修改活跃时间
+     */
+    private void addActive(List<String> userIds, long now) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String userId : userIds) {
+                conn.zAdd(FEED_ACTIVE_KEY, now, userId, RedisZSetCommands.ZAddArgs.ifNotExists());
+            }
+            return null;
+        });
+    }
+}
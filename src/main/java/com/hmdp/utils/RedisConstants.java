@@ -9,18 +9,83 @@ public class RedisConstants {
 
     public static final Long CACHE_NULL_TTL = 2L;
 
-    public static final Long CACHE_SHOP_TTL = 30L;
+    // 基本类型常量，可以在@RedisCache注解中使用
+    public static final long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
     public static final String CACHE_HOT_KEY = "cache:hot:";
 
+    // 缓存删除后通知各节点本地缓存的频道，消息为逗号分隔的key
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    // 延迟双删的间隔，毫秒
+    public static final Long CACHE_DOUBLE_DELETE_DELAY = 500L;
+
+    // 命名空间版本号，cache:ns:{namespace}
+    public static final String CACHE_NAMESPACE_KEY = "cache:ns:";
+    // 版本号在本地缓存的时间，毫秒；版本升级时会通过频道通知，这个时间只是兜底
+    public static final Long CACHE_NAMESPACE_LOCAL_TTL = 5000L;
+    // 命名空间：店铺类型列表 / 某个类型下的店铺 / 某个用户的博客
+    public static final String SHOP_TYPE_NAMESPACE = "shop:type";
+    public static final String SHOP_OF_TYPE_NAMESPACE = "shop:of:type:";
+    public static final String BLOG_OF_USER_NAMESPACE = "blog:of:user:";
+
+
+    public static final long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    // 博客评论的第一页（含每条一级评论最早的几条回复），有新评论时失效
+    public static final String CACHE_COMMENTS_KEY = "cache:comments:";
+    public static final long CACHE_COMMENTS_TTL = 10L;
+
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final long CACHE_USER_TTL = 30L;
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
+    // 通用互斥锁前缀，后面拼接完整的缓存key
+    public static final String LOCK_KEY_PREFIX = "lock:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    // 点赞数有变化、还没写回数据库的博客id；写回时先改名为flushing再处理，处理完才删除
+    public static final String BLOG_LIKE_DIRTY_KEY = "blog:like:dirty";
+    public static final String BLOG_LIKE_FLUSHING_KEY = "blog:like:flushing";
+    // 博客的实时评论数（Hash，field为博客id），读取博客时覆盖缓存中的评论数，没有的以数据库为准
+    public static final String BLOG_COMMENTS_COUNT_KEY = "blog:comments:count";
+    // 评论数有变化、还没写回数据库的博客id
+    public static final String BLOG_COMMENTS_DIRTY_KEY = "blog:comments:dirty";
+    public static final String BLOG_COMMENTS_FLUSHING_KEY = "blog:comments:flushing";
+    // 评论的点赞用户 blog:comment:liked:{commentId}（ZSet），以及点赞数待写回的评论id
+    public static final String BLOG_COMMENT_LIKED_KEY = "blog:comment:liked:";
+    public static final String BLOG_COMMENT_LIKE_DIRTY_KEY = "blog:comment:like:dirty";
+    public static final String BLOG_COMMENT_LIKE_FLUSHING_KEY = "blog:comment:like:flushing";
+    // 热门博客排行，score为随时间衰减的热度，只保留前BLOG_HOT_SIZE篇
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final Long BLOG_HOT_SIZE = 1000L;
     public static final String FEED_KEY = "feed:";
+    // 用户关注的人 follows:{userId}（Set）
+    public static final String FOLLOWS_KEY = "follows:";
+    // 发布博客后推送给粉丝的任务进度 feed:fanout:{blogId}（Hash），未完成的任务id在pending中，完成后进度保留FEED_FANOUT_TTL小时
+    public static final String FEED_FANOUT_KEY = "feed:fanout:";
+    public static final String FEED_FANOUT_PENDING_KEY = "feed:fanout:pending";
+    public static final Long FEED_FANOUT_TTL = 24L;
+    // 大V（粉丝数达到阈值的作者）的id集合，以及大V的发件箱 feed:outbox:{authorId}（ZSet，score为发布时间）
+    public static final String FEED_BIG_AUTHOR_KEY = "feed:big";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    // 活跃用户，score为最后一次读取收件箱的时间；只给活跃用户推送、保留收件箱
+    public static final String FEED_ACTIVE_KEY = "feed:active";
+    // 已把feed:active上线前就存在的收件箱补进feed:active的标记
+    public static final String FEED_ACTIVE_SEEDED_KEY = "feed:active:seeded";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    // 最近删除的店铺id，全量重建RENAME后从GEO集合中再移除一次，防止重建期间删除的店铺被临时key带回来，小时
+    public static final String SHOP_GEO_DELETED_KEY = "shop:geo:deleted";
+    public static final Long SHOP_GEO_DELETED_TTL = 1L;
+    // 附近店铺的查询半径，米
+    public static final double SHOP_GEO_RADIUS = 5000;
+    // 游标分页降级到Redis GEO时，缓存的附近店铺结果集 shop:geo:result:{typeId}:{量化后的经度}:{量化后的纬度}，秒
+    public static final String SHOP_GEO_RESULT_KEY = "shop:geo:result:";
+    public static final Long SHOP_GEO_RESULT_TTL = 60L;
+    // 店铺新增/修改后通知各节点刷新内存中的地理位置索引，消息为逗号分隔的店铺id
+    public static final String SHOP_CHANGE_CHANNEL = "shop:change";
     public static final String USER_SIGN_KEY = "sign:";
 }
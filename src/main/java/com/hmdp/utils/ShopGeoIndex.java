@@ -0,0 +1,432 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjDoubleConsumer;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGE_CHANNEL;
+
+/**
+ * 进程内的店铺地理位置索引，替代每次都去Redis做GEOSEARCH
+ * 每个typeId一个网格索引：按经纬度把店铺划分到固定大小的格子里，查询时只扫描与圆形范围相交的格子，
+ * 再精确计算距离、排序、分页，附近几公里内通常只有几百个店铺，一次查询在微秒级
+ * 同步：
+ * 1.启动时从tb_shop全量加载，加载完成前查询返回null，由调用方降级到Redis GEO
+ * 2.店铺新增/修改后，发件箱中继发布到 shop:change 频道，所有节点按id重新加载这些店铺
+ * 3.定时全量重建兜底，防止丢消息
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex implements ApplicationRunner {
+
+    // 格子边长（度），0.01度约等于1.1公里
+    private static final double CELL_SIZE = 0.01;
+    // 与Redis GEO使用同一个地球半径，保证两边算出来的距离一致
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 所有店铺，id -> 坐标
+    private final Map<Long, ShopPoint> points = new ConcurrentHashMap<>();
+    // typeId -> 该类型的网格，网格本身不可变，有变化时整体替换（写少读多，写时复制）
+    private final Map<Long, TypeGrid> grids = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    private void subscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            List<Long> ids = Arrays.stream(body.split(",")).map(Long::valueOf).collect(Collectors.toList());
+            refresh(ids);
+        }, new ChannelTopic(SHOP_CHANGE_CHANNEL));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("加载店铺地理位置索引失败，附近店铺查询降级为Redis GEO", e);
+        }
+    }
+
+    /**
+     * 全量重建，定时兜底
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000, initialDelay = 10 * 60 * 1000)
+    public synchronized void reload() {
+        long begin = System.currentTimeMillis();
+        List<Shop> shops = shopMapper.selectList(null);
+        points.clear();
+        for (Shop shop : shops) {
+            ShopPoint point = ShopPoint.of(shop);
+            if (point != null) {
+                points.put(point.getId(), point);
+            }
+        }
+        Map<Long, List<ShopPoint>> byType = points.values().stream().collect(Collectors.groupingBy(ShopPoint::getTypeId));
+        grids.keySet().retainAll(byType.keySet());
+        byType.forEach((typeId, list) -> grids.put(typeId, new TypeGrid(list)));
+        ready = true;
+        log.info("店铺地理位置索引加载完成，共{}个店铺，耗时{}ms", points.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 按id重新加载店铺，数据库中已不存在的店铺从索引中移除
+     */
+    public synchronized void refresh(Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return;
+        }
+        Set<Long> changedTypes = new HashSet<>();
+        Map<Long, Shop> shops = shopMapper.selectBatchIds(ids).stream().collect(Collectors.toMap(Shop::getId, s -> s));
+        for (Long id : ids) {
+            ShopPoint old = points.remove(id);
+            if (old != null) {
+                changedTypes.add(old.getTypeId());
+            }
+            ShopPoint point = ShopPoint.of(shops.get(id));
+            if (point != null) {
+                points.put(id, point);
+                changedTypes.add(point.getTypeId());
+            }
+        }
+        for (Long typeId : changedTypes) {
+            List<ShopPoint> list = points.values().stream()
+                    .filter(p -> p.getTypeId().equals(typeId))
+                    .collect(Collectors.toList());
+            if (list.isEmpty()) {
+                grids.remove(typeId);
+            } else {
+                grids.put(typeId, new TypeGrid(list));
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询附近的店铺，按距离升序（距离相同按id升序）分页
+     * @param typeId 店铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param radius 半径（米）
+     * @param from 跳过的条数
+     * @param size 每页条数
+     * @return 结果，索引尚未加载完成时返回null
+     */
+    public List<GeoHit> search(Long typeId, double x, double y, double radius, int from, int size) {
+        if (!ready) {
+            return null;
+        }
+        List<GeoHit> hits = searchAll(typeId, x, y, radius);
+        if (hits.size() <= from) {
+            return Collections.emptyList();
+        }
+        return hits.subList(from, Math.min(from + size, hits.size()));
+    }
+
+    /**
+     * 游标分页：返回排在after之后的size个店铺，after为null代表第一页
+     * 用一个容量为size的大顶堆筛选，不需要对半径内的全部店铺排序，每一页的代价只和页大小有关
+     * @param after 上一页最后一个店铺（距离 + id）
+     * @return 结果，索引尚未加载完成时返回null
+     */
+    public List<GeoHit> searchAfter(Long typeId, double x, double y, double radius, GeoHit after, int size) {
+        if (!ready) {
+            return null;
+        }
+        PriorityQueue<GeoHit> heap = new PriorityQueue<>(size + 1, GeoHit.ORDER.reversed());
+        scan(typeId, x, y, radius, (p, d) -> {
+            GeoHit hit = new GeoHit(p.getId(), d);
+            // 1.上一页及之前的跳过
+            if (after != null && GeoHit.ORDER.compare(hit, after) <= 0) {
+                return;
+            }
+            // 2.堆没满直接放，满了只有比堆顶更近才替换
+            if (heap.size() < size) {
+                heap.offer(hit);
+            } else if (GeoHit.ORDER.compare(hit, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(hit);
+            }
+        });
+        List<GeoHit> hits = new ArrayList<>(heap);
+        hits.sort(GeoHit.ORDER);
+        return hits;
+    }
+
+    /**
+     * 半径内的全部店铺，已排序
+     */
+    private List<GeoHit> searchAll(Long typeId, double x, double y, double radius) {
+        List<GeoHit> hits = new ArrayList<>();
+        scan(typeId, x, y, radius, (p, d) -> hits.add(new GeoHit(p.getId(), d)));
+        hits.sort(GeoHit.ORDER);
+        return hits;
+    }
+
+    /**
+     * 带筛选条件的查询，筛选和排序都在内存中完成，只返回符合条件的当前页
+     * @param x 经度，为空则不限距离
+     * @param y 纬度，为空则不限距离
+     * @return 结果，没有坐标时距离为NaN，索引尚未加载完成时返回null
+     */
+    public List<GeoHit> filter(Long typeId, Double x, Double y, double radius, ShopFilter filter, int from, int size) {
+        if (!ready) {
+            return null;
+        }
+        List<ShopPoint> candidates = new ArrayList<>();
+        if (x != null && y != null) {
+            scan(typeId, x, y, radius, (p, d) -> candidates.add(p));
+        } else {
+            TypeGrid grid = grids.get(typeId);
+            if (grid != null) {
+                grid.cells.values().forEach(cell -> candidates.addAll(Arrays.asList(cell)));
+            }
+        }
+        return filter(candidates, x, y, radius, filter, from, size);
+    }
+
+    /**
+     * 对候选店铺做筛选、排序、分页，内存索引不可用时也可以对从数据库查出的店铺使用
+     */
+    public static List<GeoHit> filter(Collection<ShopPoint> candidates, Double x, Double y, double radius,
+                                      ShopFilter filter, int from, int size) {
+        boolean hasLocation = x != null && y != null;
+        int now = LocalTime.now().toSecondOfDay() / 60;
+        // 1.筛选
+        List<GeoHit> hits = new ArrayList<>();
+        Map<Long, ShopPoint> matched = new HashMap<>();
+        for (ShopPoint p : candidates) {
+            double d = hasLocation ? distance(x, y, p.getX(), p.getY()) : Double.NaN;
+            if (hasLocation && d > radius) {
+                continue;
+            }
+            if (filter.getMinPrice() != null && (p.getAvgPrice() == null || p.getAvgPrice() < filter.getMinPrice())) {
+                continue;
+            }
+            if (filter.getMaxPrice() != null && (p.getAvgPrice() == null || p.getAvgPrice() > filter.getMaxPrice())) {
+                continue;
+            }
+            if (filter.getMinScore() != null && (p.getScore() == null || p.getScore() < filter.getMinScore())) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(filter.getOpenNow()) && !p.isOpenAt(now)) {
+                continue;
+            }
+            hits.add(new GeoHit(p.getId(), d));
+            matched.put(p.getId(), p);
+        }
+        // 2.排序，评分、销量相同时近的在前
+        String sortBy = filter.getSortBy();
+        if (sortBy == null) {
+            sortBy = hasLocation ? ShopFilter.SORT_DISTANCE : ShopFilter.SORT_SCORE;
+        }
+        Comparator<GeoHit> order;
+        switch (sortBy) {
+            case ShopFilter.SORT_SCORE:
+                order = Comparator.comparing((GeoHit h) -> matched.get(h.getId()).getScore(),
+                        Comparator.nullsLast(Comparator.reverseOrder()));
+                break;
+            case ShopFilter.SORT_SOLD:
+                order = Comparator.comparing((GeoHit h) -> matched.get(h.getId()).getSold(),
+                        Comparator.nullsLast(Comparator.reverseOrder()));
+                break;
+            default:
+                order = (a, b) -> 0;
+        }
+        hits.sort(hasLocation ? order.thenComparing(GeoHit.ORDER) : order.thenComparing(GeoHit::getId));
+        // 3.分页
+        if (hits.size() <= from) {
+            return Collections.emptyList();
+        }
+        return hits.subList(from, Math.min(from + size, hits.size()));
+    }
+
+    /**
+     * 遍历半径内的店铺（无序）
+     */
+    private void scan(Long typeId, double x, double y, double radius, ObjDoubleConsumer<ShopPoint> consumer) {
+        TypeGrid grid = grids.get(typeId);
+        if (grid == null) {
+            return;
+        }
+        // 1.圆形范围外接矩形覆盖的格子
+        double dLat = radius / METERS_PER_DEGREE;
+        double dLon = dLat / Math.max(Math.cos(Math.toRadians(y)), 1e-6);
+        long minCellX = cell(x - dLon), maxCellX = cell(x + dLon);
+        long minCellY = cell(y - dLat), maxCellY = cell(y + dLat);
+        // 2.精确计算距离
+        for (long cx = minCellX; cx <= maxCellX; cx++) {
+            for (long cy = minCellY; cy <= maxCellY; cy++) {
+                ShopPoint[] cellPoints = grid.cells.get(cellKey(cx, cy));
+                if (cellPoints == null) {
+                    continue;
+                }
+                for (ShopPoint p : cellPoints) {
+                    double d = distance(x, y, p.getX(), p.getY());
+                    if (d <= radius) {
+                        consumer.accept(p, d);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 球面距离（haversine），与Redis GEODIST的算法一致
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1), lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private static long cell(double degree) {
+        return (long) Math.floor(degree / CELL_SIZE);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * 一个类型的网格，cellKey -> 格子里的店铺
+     */
+    private static class TypeGrid {
+        private final Map<Long, ShopPoint[]> cells;
+
+        private TypeGrid(List<ShopPoint> list) {
+            Map<Long, List<ShopPoint>> tmp = list.stream()
+                    .collect(Collectors.groupingBy(p -> cellKey(cell(p.getX()), cell(p.getY()))));
+            Map<Long, ShopPoint[]> cells = new HashMap<>(tmp.size() * 2);
+            tmp.forEach((k, v) -> cells.put(k, v.toArray(new ShopPoint[0])));
+            this.cells = cells;
+        }
+    }
+
+    /**
+     * 索引中的店铺，只保留筛选、排序用到的字段
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ShopPoint {
+        private final Long id;
+        private final Long typeId;
+        private final double x;
+        private final double y;
+        private final Long avgPrice;
+        private final Integer score;
+        private final Integer sold;
+        // 营业时间段，每段为[开门, 关门]，当天的第几分钟，解析不了为空
+        private final List<int[]> openRanges;
+
+        public static ShopPoint of(Shop shop) {
+            if (shop == null || shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                return null;
+            }
+            return new ShopPoint(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY(),
+                    shop.getAvgPrice(), shop.getScore(), shop.getSold(), parseOpenHours(shop.getOpenHours()));
+        }
+
+        /**
+         * 是否在营业时间内，在任意一个时间段内即为营业，营业时间未知的视为不营业
+         * @param minute 当天的第几分钟
+         */
+        public boolean isOpenAt(int minute) {
+            for (int[] range : openRanges) {
+                int open = range[0], close = range[1];
+                if (open <= close ? minute >= open && minute < close
+                        // 跨天营业，例如 11:30-03:00
+                        : minute >= open || minute < close) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 解析 10:00-22:00 格式的营业时间，多个时间段用逗号分隔，例如 11:00-13:50,17:00-20:50
+         */
+        private static List<int[]> parseOpenHours(String openHours) {
+            try {
+                List<int[]> ranges = new ArrayList<>(2);
+                for (String range : openHours.trim().split("[,，]")) {
+                    String[] parts = range.trim().split("-");
+                    ranges.add(new int[]{toMinute(parts[0]), toMinute(parts[1])});
+                }
+                return ranges;
+            } catch (Exception e) {
+                return Collections.emptyList();
+            }
+        }
+
+        private static int toMinute(String hhmm) {
+            String[] parts = hhmm.trim().split(":");
+            return Integer.parseInt(parts[0]) * 60 + Integer.parseInt(parts[1]);
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class GeoHit {
+        public static final Comparator<GeoHit> ORDER = Comparator.comparingDouble(GeoHit::getDistance).thenComparing(GeoHit::getId);
+
+        private final Long id;
+        /**
+         * 距离（米）
+         */
+        private final double distance;
+
+        /**
+         * 游标格式：距离_店铺id
+         */
+        public String toCursor() {
+            return distance + "_" + id;
+        }
+
+        /**
+         * 解析游标，格式不对返回null
+         */
+        public static GeoHit parseCursor(String cursor) {
+            int i = cursor.lastIndexOf('_');
+            if (i <= 0) {
+                return null;
+            }
+            try {
+                return new GeoHit(Long.valueOf(cursor.substring(i + 1)), Double.parseDouble(cursor.substring(0, i)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
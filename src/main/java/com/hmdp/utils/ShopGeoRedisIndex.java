@@ -0,0 +1,165 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_DELETED_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_DELETED_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 维护Redis中的店铺地理位置 shop:geo:{typeId}
+ * 1.增量同步：店铺新增/修改/删除后，由发件箱中继按id查询数据库的最新状态，
+ *   从其它类型的集合中移除、加入当前类型的集合（已删除则从所有集合中移除），幂等，事件重复或乱序都没关系
+ * 2.全量重建：按id分页读取tb_shop，管道批量GEOADD到临时key，完成后RENAME覆盖正式key，重建期间查询不受影响
+ *   RENAME后再同步一次重建期间修改过的店铺（按数据库时间）和最近删除的店铺（shop:geo:deleted），临时key里可能是它们的旧状态
+ */
+@Slf4j
+@Component
+public class ShopGeoRedisIndex {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final String REBUILD_SUFFIX = ":rebuild";
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    /**
+     * 按数据库的最新状态同步这些店铺
+     */
+    public void sync(Collection<Long> shopIds) {
+        if (CollUtil.isEmpty(shopIds)) {
+            return;
+        }
+        // 1.查询店铺的最新状态，查不到的就是已经删除了
+        Map<Long, Shop> shops = shopMapper.selectBatchIds(shopIds).stream()
+                .collect(Collectors.toMap(Shop::getId, s -> s));
+        // 2.修改类型时不知道旧的类型，所以从其它所有类型中移除，类型只有十几个
+        List<Long> typeIds = queryTypeIds();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long id : shopIds) {
+                Shop shop = shops.get(id);
+                Long currentType = shop == null || shop.getX() == null || shop.getY() == null ? null : shop.getTypeId();
+                for (Long typeId : typeIds) {
+                    if (!typeId.equals(currentType)) {
+                        conn.zRem(SHOP_GEO_KEY + typeId, id.toString());
+                    }
+                }
+                if (currentType != null) {
+                    conn.geoAdd(SHOP_GEO_KEY + currentType, new Point(shop.getX(), shop.getY()), id.toString());
+                }
+                // 3.已删除的店铺记录下来，供正在进行的全量重建在RENAME后再移除一次
+                if (shop == null) {
+                    conn.sAdd(SHOP_GEO_DELETED_KEY, id.toString());
+                    conn.expire(SHOP_GEO_DELETED_KEY, TimeUnit.HOURS.toSeconds(SHOP_GEO_DELETED_TTL));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 全量重建
+     * @return 写入的店铺数量，正在重建中则返回-1
+     */
+    public int rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            log.warn("店铺地理位置正在重建中，忽略本次请求");
+            return -1;
+        }
+        try {
+            long begin = System.currentTimeMillis();
+            // 用数据库的时间和update_time比较，应用服务器和数据库的时钟可能不一致
+            LocalDateTime beginTime = shopMapper.selectNow();
+            // 1.清理上次没完成的临时key
+            List<Long> typeIds = queryTypeIds();
+            stringRedisTemplate.delete(typeIds.stream().map(t -> SHOP_GEO_KEY + t + REBUILD_SUFFIX).collect(Collectors.toList()));
+            // 2.按id分页读取，每页一次管道写入
+            Set<Long> builtTypes = new HashSet<>();
+            long lastId = 0;
+            int total = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "type_id", "x", "y")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + PAGE_SIZE));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Shop shop : shops) {
+                        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                            continue;
+                        }
+                        builtTypes.add(shop.getTypeId());
+                        conn.geoAdd(SHOP_GEO_KEY + shop.getTypeId() + REBUILD_SUFFIX,
+                                new Point(shop.getX(), shop.getY()), shop.getId().toString());
+                    }
+                    return null;
+                });
+                total += shops.size();
+                lastId = shops.get(shops.size() - 1).getId();
+                log.info("店铺地理位置重建进度：{}", total);
+                if (shops.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            // 3.覆盖正式key，没有店铺的类型直接删除
+            for (Long typeId : typeIds) {
+                if (!builtTypes.contains(typeId)) {
+                    stringRedisTemplate.delete(SHOP_GEO_KEY + typeId);
+                }
+            }
+            for (Long typeId : builtTypes) {
+                stringRedisTemplate.rename(SHOP_GEO_KEY + typeId + REBUILD_SUFFIX, SHOP_GEO_KEY + typeId);
+            }
+            // 4.重建期间被修改、被删除的店铺，临时key里可能是旧数据，再同步一次
+            Set<Long> changed = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id")
+                    .ge("update_time", beginTime))
+                    .stream().map(Shop::getId).collect(Collectors.toSet());
+            Set<String> deleted = stringRedisTemplate.opsForSet().members(SHOP_GEO_DELETED_KEY);
+            if (deleted != null) {
+                deleted.forEach(id -> changed.add(Long.valueOf(id)));
+            }
+            sync(changed);
+            log.info("店铺地理位置重建完成，共{}个店铺，耗时{}ms", total, System.currentTimeMillis() - begin);
+            return total;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private List<Long> queryTypeIds() {
+        return shopTypeMapper.selectList(new QueryWrapper<ShopType>().select("id"))
+                .stream().map(ShopType::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,259 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGE_CHANNEL;
+
+/**
+ * 进程内的店铺名称、地址倒排索引，替代 name LIKE '%x%' 的全表扫描 + COUNT(*)
+ * 1.分词：中文没有空格，直接按单字和相邻两个字（bigram）切分，例如"茶餐厅" -> 茶 餐 厅 茶餐 餐厅
+ * 2.查询：关键词同样切分后求倒排表的交集，再确认名称或地址中确实包含关键词（bigram都命中不代表连在一起）
+ * 3.排序：名称以关键词开头 > 名称包含 > 只有地址包含，相同时销量高的在前
+ * 4.同步：启动时全量构建，店铺变化时通过 shop:change 频道按id更新，定时全量重建兜底
+ *   全量重建在新的索引上构建完再整体替换；按id更新时先加入新的词、再去掉旧的词，查询过程中不会搜不到这个店铺
+ */
+@Slf4j
+@Component
+public class ShopSearchIndex implements ApplicationRunner {
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 加载完成前为null
+    private volatile Index index;
+
+    @PostConstruct
+    private void subscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            List<Long> ids = Arrays.stream(body.split(",")).map(Long::valueOf).collect(Collectors.toList());
+            refresh(ids);
+        }, new ChannelTopic(SHOP_CHANGE_CHANNEL));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("加载店铺搜索索引失败，店铺名称搜索降级为数据库查询", e);
+        }
+    }
+
+    /**
+     * 全量重建，定时兜底
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000, initialDelay = 10 * 60 * 1000)
+    public synchronized void reload() {
+        long begin = System.currentTimeMillis();
+        List<Shop> shops = shopMapper.selectList(null);
+        Index newIndex = new Index();
+        shops.forEach(shop -> newIndex.add(shop.getId(), Doc.of(shop)));
+        index = newIndex;
+        log.info("店铺搜索索引加载完成，共{}个店铺，{}个词，耗时{}ms",
+                newIndex.docs.size(), newIndex.postings.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 按id重新加载店铺，数据库中已不存在的店铺从索引中移除
+     */
+    public synchronized void refresh(Collection<Long> ids) {
+        Index current = index;
+        if (current == null || CollUtil.isEmpty(ids)) {
+            return;
+        }
+        Map<Long, Shop> shops = shopMapper.selectBatchIds(ids).stream().collect(Collectors.toMap(Shop::getId, s -> s));
+        for (Long id : ids) {
+            Shop shop = shops.get(id);
+            current.replace(id, shop == null ? null : Doc.of(shop));
+        }
+    }
+
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * 搜索店铺
+     * @param keyword 关键词，为空则按id顺序返回全部店铺
+     * @param from 跳过的条数
+     * @param size 每页条数
+     * @return 排好序的当前页店铺id，索引尚未加载完成时返回null
+     */
+    public List<Long> search(String keyword, int from, int size) {
+        Index current = index;
+        if (current == null) {
+            return null;
+        }
+        Map<Long, Doc> docs = current.docs;
+        // 1.没有关键词，按id顺序分页
+        if (StrUtil.isBlank(keyword)) {
+            return docs.keySet().stream().sorted().skip(from).limit(size).collect(Collectors.toList());
+        }
+        String q = normalize(keyword);
+        // 2.倒排表求交集，从最短的开始
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String term : terms(q)) {
+            Set<Long> ids = current.postings.get(term);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        List<Hit> hits = new ArrayList<>();
+        for (Long id : lists.get(0)) {
+            if (!containsAll(lists, id)) {
+                continue;
+            }
+            // 3.确认关键词连续出现，并计算相关度
+            Doc doc = docs.get(id);
+            if (doc == null) {
+                continue;
+            }
+            int rank = doc.getName().startsWith(q) ? 3 : doc.getName().contains(q) ? 2 : doc.getAddress().contains(q) ? 1 : 0;
+            if (rank > 0) {
+                hits.add(new Hit(id, rank, doc.getSold()));
+            }
+        }
+        // 4.排序、分页
+        hits.sort(Comparator.comparingInt(Hit::getRank).reversed()
+                .thenComparing(Comparator.comparingInt(Hit::getSold).reversed())
+                .thenComparing(Hit::getId));
+        return hits.stream().skip(from).limit(size).map(Hit::getId).collect(Collectors.toList());
+    }
+
+    private static boolean containsAll(List<Set<Long>> lists, Long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 倒排索引，id -> 店铺的名称、地址，词 -> 包含这个词的店铺id
+     */
+    private static class Index {
+        private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+        private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+        private void add(Long id, Doc doc) {
+            for (String term : doc.terms()) {
+                postings.computeIfAbsent(term, k -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+            docs.put(id, doc);
+        }
+
+        /**
+         * 替换一个店铺，doc为null代表删除：先加入新的，再去掉新的里面已经没有的词
+         */
+        private void replace(Long id, Doc doc) {
+            Doc old = docs.get(id);
+            Set<String> terms = Collections.emptySet();
+            if (doc != null) {
+                add(id, doc);
+                terms = doc.terms();
+            } else {
+                docs.remove(id);
+            }
+            if (old == null) {
+                return;
+            }
+            for (String term : old.terms()) {
+                if (terms.contains(term)) {
+                    continue;
+                }
+                Set<Long> ids = postings.get(term);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 去掉空白、统一小写
+     */
+    private static String normalize(String text) {
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    /**
+     * 切分为单字和bigram；查询时关键词超过一个字只用bigram就够了
+     */
+    private static Set<String> terms(String q) {
+        Set<String> terms = new HashSet<>();
+        if (q.length() == 1) {
+            terms.add(q);
+            return terms;
+        }
+        for (int i = 0; i + 1 < q.length(); i++) {
+            terms.add(q.substring(i, i + 2));
+        }
+        return terms;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Doc {
+        private final String name;
+        private final String address;
+        private final int sold;
+
+        private static Doc of(Shop shop) {
+            return new Doc(normalize(shop.getName()), normalize(shop.getAddress()),
+                    shop.getSold() == null ? 0 : shop.getSold());
+        }
+
+        /**
+         * 名称、地址的单字和bigram
+         */
+        private Set<String> terms() {
+            Set<String> terms = new HashSet<>();
+            for (String text : new String[]{name, address}) {
+                for (int i = 0; i < text.length(); i++) {
+                    terms.add(text.substring(i, i + 1));
+                    if (i + 1 < text.length()) {
+                        terms.add(text.substring(i, i + 2));
+                    }
+                }
+            }
+            return terms;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Hit {
+        private final Long id;
+        private final int rank;
+        private final int sold;
+    }
+}
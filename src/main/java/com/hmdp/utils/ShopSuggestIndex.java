@@ -0,0 +1,254 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.ShopSuggestion;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGE_CHANNEL;
+
+/**
+ * 店铺名称前缀自动补全
+ * 店铺名称组成一棵字典树，每个节点预先算好以该前缀开头的权重最高的TOP_K个店铺，
+ * 查询只需沿着前缀走到对应节点直接返回，与店铺总数无关
+ * 权重：评分 * ln(1 + 销量)，评分高、销量大的排在前面
+ * 店铺变化时只更新它名称路径上的节点：从下往上用子节点的TOP_K合并出父节点的TOP_K
+ */
+@Slf4j
+@Component
+public class ShopSuggestIndex implements ApplicationRunner {
+
+    public static final int TOP_K = 10;
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingDouble((Entry e) -> e.weight).reversed()
+            .thenComparing(e -> e.id);
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private volatile Node root = new Node();
+    // id -> 当前在树中的店铺，修改、删除时用来找到旧的路径
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    private void subscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            List<Long> ids = Arrays.stream(body.split(",")).map(Long::valueOf).collect(Collectors.toList());
+            refresh(ids);
+        }, new ChannelTopic(SHOP_CHANGE_CHANNEL));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("加载店铺名称补全索引失败，自动补全降级为数据库查询", e);
+        }
+    }
+
+    /**
+     * 全量重建：在新的树上构建完再整体替换，定时兜底
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000, initialDelay = 10 * 60 * 1000)
+    public synchronized void reload() {
+        long begin = System.currentTimeMillis();
+        List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>().select("id", "name", "sold", "score"));
+        Node newRoot = new Node();
+        Map<Long, Entry> newEntries = new HashMap<>(shops.size() * 2);
+        for (Shop shop : shops) {
+            Entry entry = Entry.of(shop);
+            if (entry != null) {
+                newEntries.put(entry.id, entry);
+                insert(newRoot, entry, false);
+            }
+        }
+        computeAll(newRoot);
+        root = newRoot;
+        entries.clear();
+        entries.putAll(newEntries);
+        ready = true;
+        log.info("店铺名称补全索引加载完成，共{}个店铺，耗时{}ms", entries.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 按id增量更新
+     */
+    public synchronized void refresh(Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return;
+        }
+        Map<Long, Shop> shops = shopMapper.selectBatchIds(ids).stream().collect(Collectors.toMap(Shop::getId, s -> s));
+        for (Long id : ids) {
+            Entry old = entries.remove(id);
+            if (old != null) {
+                delete(root, old);
+            }
+            Entry entry = Entry.of(shops.get(id));
+            if (entry != null) {
+                entries.put(id, entry);
+                insert(root, entry, true);
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 补全建议
+     * @param prefix 用户已输入的内容
+     * @param limit 条数，最多TOP_K
+     * @return 建议，索引尚未加载完成时返回null
+     */
+    public List<ShopSuggestion> suggest(String prefix, int limit) {
+        if (!ready) {
+            return null;
+        }
+        String key = normalize(prefix);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        Entry[] top = node.top;
+        List<ShopSuggestion> result = new ArrayList<>(Math.min(limit, top.length));
+        for (int i = 0; i < top.length && i < limit; i++) {
+            result.add(new ShopSuggestion(top[i].id, top[i].name));
+        }
+        return result;
+    }
+
+    /**
+     * 插入店铺
+     * @param recompute 是否沿路径重新计算TOP_K，全量构建时最后统一计算
+     */
+    private void insert(Node root, Entry entry, boolean recompute) {
+        List<Node> path = new ArrayList<>(entry.key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < entry.key.length(); i++) {
+            node = node.children.computeIfAbsent(entry.key.charAt(i), c -> new Node());
+            path.add(node);
+        }
+        node.own.add(entry);
+        if (recompute) {
+            recompute(path);
+        }
+    }
+
+    private void delete(Node root, Entry entry) {
+        List<Node> path = new ArrayList<>(entry.key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < entry.key.length() && node != null; i++) {
+            node = node.children.get(entry.key.charAt(i));
+            path.add(node);
+        }
+        if (node == null) {
+            return;
+        }
+        node.own.removeIf(e -> e.id.equals(entry.id));
+        // 删除没有店铺的空节点
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node n = path.get(i);
+            if (!n.own.isEmpty() || !n.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(entry.key.charAt(i - 1));
+            path.remove(i);
+        }
+        recompute(path);
+    }
+
+    /**
+     * 从下往上重新计算路径上各节点的TOP_K
+     */
+    private static void recompute(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).computeTop();
+        }
+    }
+
+    /**
+     * 后序遍历计算整棵树的TOP_K
+     */
+    private static void computeAll(Node node) {
+        for (Node child : node.children.values()) {
+            computeAll(child);
+        }
+        node.computeTop();
+    }
+
+    /**
+     * 去掉空白、统一小写，建索引和查询都用它
+     */
+    public static String normalize(String text) {
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new ConcurrentHashMap<>();
+        // 名称恰好到这个节点结束的店铺（名称可能重复）
+        private final List<Entry> own = new ArrayList<>(1);
+        // 以该节点为前缀的TOP_K，整体替换，查询时不加锁
+        private volatile Entry[] top = new Entry[0];
+
+        private void computeTop() {
+            List<Entry> candidates = new ArrayList<>(own);
+            for (Node child : children.values()) {
+                candidates.addAll(Arrays.asList(child.top));
+            }
+            candidates.sort(ORDER);
+            top = candidates.subList(0, Math.min(TOP_K, candidates.size())).toArray(new Entry[0]);
+        }
+    }
+
+    private static class Entry {
+        private final Long id;
+        private final String name;
+        private final String key;
+        private final double weight;
+
+        private Entry(Long id, String name, String key, double weight) {
+            this.id = id;
+            this.name = name;
+            this.key = key;
+            this.weight = weight;
+        }
+
+        static Entry of(Shop shop) {
+            if (shop == null || StrUtil.isBlank(shop.getName())) {
+                return null;
+            }
+            int score = shop.getScore() == null ? 0 : shop.getScore();
+            int sold = shop.getSold() == null ? 0 : shop.getSold();
+            return new Entry(shop.getId(), shop.getName(), normalize(shop.getName()), score * Math.log1p(sold));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.hmdp.utils.RedisConstants.LOCK_KEY_PREFIX;
+
+/**
+ * 计数异步写回数据库（write-behind）的通用流程，BlogLikeFlusher、BlogCommentFlusher共用
+ * 计数变化时只把id加入dirty集合，这里把有变化的id分批交给batchWriter写回
+ * 1.先把dirty改名为flushing再处理，处理期间的新变化进入新的dirty集合；写完才删除flushing，
+ *   中途宕机的话flushing还在，下次（任意节点）会先把它处理掉，不会丢失
+ * 2.整个过程持有以flushing命名的锁，每写完一批续期一次：多个节点同时执行时，
+ *   不会出现一个节点删除flushing时，删掉的是另一个节点刚改名出来、还没处理的集合
+ * 3.batchWriter写回的应当是总数而不是增量，重复写回结果也一样，失败了可以放心重试
+ */
+@Slf4j
+@Component
+public class WriteBehindFlusher {
+
+    private static final int BATCH_SIZE = 500;
+    // 写回锁的有效期，每写完一批续期一次，秒
+    private static final long LOCK_TTL = 60L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 写回一轮，拿不到锁说明其它线程或节点正在写回，直接跳过
+     * @param dirtyKey 有变化、还没写回的id集合
+     * @param flushingKey 正在写回的id集合
+     * @param batchWriter 写回一批id，最多BATCH_SIZE个
+     */
+    public void flush(String dirtyKey, String flushingKey, Consumer<List<String>> batchWriter) {
+        SimpleRedisLock lock = new SimpleRedisLock(flushingKey, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_TTL)) {
+            return;
+        }
+        try {
+            // 1.上次没处理完的flushing优先处理
+            if (!hasKey(flushingKey)) {
+                // 2.没有则把dirty改名为flushing，dirty不存在时会抛异常，先判断一下
+                if (!hasKey(dirtyKey)
+                        || !Boolean.TRUE.equals(stringRedisTemplate.renameIfAbsent(dirtyKey, flushingKey))) {
+                    return;
+                }
+            }
+            // 3.分批写回，每批写完续期锁
+            Set<String> ids = stringRedisTemplate.opsForSet().members(flushingKey);
+            if (CollUtil.isNotEmpty(ids)) {
+                for (List<String> batch : CollUtil.split(ids, BATCH_SIZE)) {
+                    batchWriter.accept(batch);
+                    stringRedisTemplate.expire(LOCK_KEY_PREFIX + flushingKey, LOCK_TTL, TimeUnit.SECONDS);
+                }
+            }
+            // 4.全部写完才删除
+            stringRedisTemplate.delete(flushingKey);
+        } catch (Exception e) {
+            log.error("{}写回数据库失败，下次重试", dirtyKey, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasKey(String key) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(key));
+    }
+}
@@ -0,0 +1,17 @@
+-- 新增评论后博客的评论数+1，并标记待写回
+-- 1.参数列表
+-- 1.1.博客实时评论数的Hash blog:comments:count
+local countKey = KEYS[1]
+-- 1.2.评论数待写回数据库的博客id集合 blog:comments:dirty
+local dirtyKey = KEYS[2]
+-- 1.3.博客id
+local blogId = ARGV[1]
+
+-- 2.脚本业务
+-- 2.1.已有计数才+1；没有的话不能从0开始加，等BlogCommentFlusher从数据库统计后写入
+if (redis.call('hexists', countKey, blogId) == 1) then
+    redis.call('hincrby', countKey, blogId, 1)
+end
+-- 2.2.标记评论数有变化
+redis.call('sadd', dirtyKey, blogId)
+return 1
@@ -0,0 +1,28 @@
+-- 点赞/取消点赞，判断、修改、计数、标记待写回在一个脚本里原子完成
+-- 1.参数列表
+-- 1.1.点赞用户的ZSet blog:liked:{blogId}，评论点赞时为 blog:comment:liked:{commentId}
+local likedKey = KEYS[1]
+-- 1.2.点赞数待写回数据库的博客id集合 blog:like:dirty，评论点赞时为 blog:comment:like:dirty
+local dirtyKey = KEYS[2]
+-- 1.3.用户id
+local userId = ARGV[1]
+-- 1.4.当前时间戳，作为点赞时间
+local now = ARGV[2]
+-- 1.5.博客id（或评论id）
+local blogId = ARGV[3]
+
+-- 2.脚本业务
+local isLike
+if (redis.call('zscore', likedKey, userId)) then
+    -- 2.1.已点赞，取消点赞
+    redis.call('zrem', likedKey, userId)
+    isLike = 0
+else
+    -- 2.2.未点赞，点赞
+    redis.call('zadd', likedKey, now, userId)
+    isLike = 1
+end
+-- 2.3.标记点赞数有变化，由BlogLikeFlusher（评论为BlogCommentFlusher）异步写回数据库
+redis.call('sadd', dirtyKey, blogId)
+-- 3.返回 {是否点赞, 点赞数}
+return {isLike, redis.call('zcard', likedKey)}
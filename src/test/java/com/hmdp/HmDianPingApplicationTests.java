@@ -3,7 +3,12 @@ package com.hmdp;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheWarmer;
+import com.hmdp.utils.RedisData;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoIndex.GeoHit;
+import com.hmdp.utils.ShopGeoIndex.ShopPoint;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.geo.Point;
@@ -13,6 +18,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +30,12 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.CACHE_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_RADIUS;
+import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 class HmDianPingApplicationTests {
@@ -34,9 +46,15 @@ class HmDianPingApplicationTests {
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private CacheWarmer cacheWarmer;
+
     @Resource
     private RedisIdWorker redisIdWorker;
 
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
@@ -73,6 +91,26 @@ class HmDianPingApplicationTests {
         cacheClient.setWithLogicalExpire(CACHE_HOT_KEY + 1L, shop, 10L, TimeUnit.SECONDS);
     }
 
+    @Test
+    void testWarmUp() {
+        // 启动时会自动预热一次，这里手动再触发一次
+        List<Long> ids = shopService.query()
+                .select("id")
+                .orderByDesc("sold", "score")
+                .last("LIMIT 100")
+                .list()
+                .stream().map(Shop::getId).collect(Collectors.toList());
+        stringRedisTemplate.delete(ids.stream().map(id -> CACHE_HOT_KEY + id).collect(Collectors.toList()));
+        int count = cacheWarmer.warmUp();
+        assertEquals(ids.size(), count);
+        // 每个热点店铺都写入了未过期的逻辑过期缓存
+        for (Long id : ids) {
+            RedisData redisData = cacheClient.getWithLogicalExpire(CACHE_HOT_KEY + id);
+            assertNotNull(redisData, "店铺" + id + "没有预热");
+            assertTrue(redisData.getExpireTime().isAfter(LocalDateTime.now()));
+        }
+    }
+
     @Test
     void loadShopData(){
         // 1.查询店铺信息 数据量大时可以分批查
@@ -101,6 +139,68 @@ class HmDianPingApplicationTests {
         });
     }
 
+    /**
+     * 附近店铺查询：内存地理位置索引 vs Redis GEO，结果应当一致，对比两者的耗时
+     */
+    @Test
+    void benchmarkShopGeoSearch() {
+        long typeId = 1L;
+        double x = 120.149993, y = 30.334229;
+        int rounds = 10000;
+        // 先确认结果一致：多个类型、多个坐标，每个都对比前3页的店铺id
+        double[][] points = {{120.149993, 30.334229}, {120.15, 30.28}, {120.2, 30.25}, {120.08, 30.3}};
+        for (long t = 1; t <= 2; t++) {
+            for (double[] p : points) {
+                for (int from = 0; from < 3 * DEFAULT_PAGE_SIZE; from += DEFAULT_PAGE_SIZE) {
+                    List<Long> local = shopGeoIndex.search(t, p[0], p[1], SHOP_GEO_RADIUS, from, DEFAULT_PAGE_SIZE)
+                            .stream().map(GeoHit::getId).collect(Collectors.toList());
+                    List<Long> redis = shopService.searchByRedisGeo((int) t, p[0], p[1], from)
+                            .stream().map(GeoHit::getId).collect(Collectors.toList());
+                    assertEquals(redis, local, "typeId=" + t + ", x=" + p[0] + ", y=" + p[1] + ", from=" + from);
+                }
+            }
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            shopGeoIndex.search(typeId, x, y, SHOP_GEO_RADIUS, (i % 4) * DEFAULT_PAGE_SIZE, DEFAULT_PAGE_SIZE);
+        }
+        System.out.println("local avg = " + (System.nanoTime() - begin) / rounds / 1000.0 + "us");
+
+        begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            shopService.searchByRedisGeo((int) typeId, x, y, (i % 4) * DEFAULT_PAGE_SIZE);
+        }
+        System.out.println("redis avg = " + (System.nanoTime() - begin) / rounds / 1000.0 + "us");
+    }
+
+    /**
+     * 营业时间解析：单个时间段、跨天、全天、一天多个时间段（tb_shop中的实际数据）
+     */
+    @Test
+    void testShopOpenHours() {
+        Function<String, ShopPoint> of = hours -> ShopPoint.of(new Shop()
+                .setId(1L).setTypeId(1L).setX(120.15).setY(30.3).setOpenHours(hours));
+        // 10:00-22:00
+        assertTrue(of.apply("10:00-22:00").isOpenAt(10 * 60));
+        assertFalse(of.apply("10:00-22:00").isOpenAt(22 * 60));
+        // 跨天
+        assertTrue(of.apply("11:30-03:00").isOpenAt(60));
+        assertFalse(of.apply("11:30-03:00").isOpenAt(4 * 60));
+        // 全天
+        assertTrue(of.apply("00:00-24:00").isOpenAt(0));
+        assertTrue(of.apply("00:00-24:00").isOpenAt(23 * 60 + 59));
+        // 午市、晚市两段
+        ShopPoint split = of.apply("11:00-13:50,17:00-20:50");
+        assertTrue(split.isOpenAt(12 * 60));
+        assertFalse(split.isOpenAt(15 * 60));
+        assertTrue(split.isOpenAt(18 * 60));
+        assertFalse(split.isOpenAt(21 * 60));
+        // 解析不了的视为不营业
+        assertFalse(of.apply("全天").isOpenAt(12 * 60));
+        assertFalse(of.apply(null).isOpenAt(12 * 60));
+    }
+
     /**
      * HLL做UV统计，无论数据量有多大，内存大小永远不超过16KB
      */